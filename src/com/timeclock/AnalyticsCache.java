@@ -0,0 +1,340 @@
+package com.timeclock;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Column store of every TimeEntries row for cross-employee reports. Each column is a direct (off-heap)
+// int buffer, so millions of punches cost a few bytes each and nothing for the GC to trace.
+// Rows are kept in entry id order; refresh() appends rows newer than the last id seen and re-reads
+// rows DataManager has marked dirty after an edit.
+public class AnalyticsCache {
+
+    // Receives raw rows from DataManager scans.
+    interface RowSink {
+        void accept(int id, int userId, String date, String action, String time, String duration);
+    }
+
+    private static final AnalyticsCache INSTANCE = new AnalyticsCache();
+    private static final int INITIAL_CAPACITY = 1 << 16;
+    // Past this many pending edits the next refresh() reloads everything instead of re-reading rows one by one.
+    private static final int MAX_DIRTY_IDS = 10_000;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    // Guarded by synchronized (dirtyIds). Nothing is tracked until the first refresh(), since an app that never
+    // runs reports never calls refresh() and would otherwise collect every edited id for its whole lifetime.
+    private final Set<Integer> dirtyIds = new HashSet<>();
+    private boolean tracking = false;
+    private boolean dirtyOverflow = false;
+
+    // Columns, all indexed by row. worked is non-zero only on "Clock Out" rows.
+    private IntBuffer entryId;
+    private IntBuffer userId;
+    private IntBuffer epochDay;
+    private IntBuffer startMinute; // minute of the day the punch was made
+    private IntBuffer worked;
+    private int size = 0;
+    private int capacity = 0;
+    private int maxEntryId = 0;
+    private int maxUserId = 0;
+
+    private AnalyticsCache() {
+        allocate(INITIAL_CAPACITY);
+    }
+
+    public static AnalyticsCache getInstance() { return INSTANCE; }
+
+    public int size() {
+        lock.readLock().lock();
+        try { return size; } finally { lock.readLock().unlock(); }
+    }
+
+    // Called by DataManager when an existing entry is edited; picked up on the next refresh().
+    void markDirty(int id) {
+        synchronized (dirtyIds) {
+            if (!tracking || dirtyOverflow) return;
+            if (dirtyIds.size() >= MAX_DIRTY_IDS) {
+                dirtyIds.clear();
+                dirtyOverflow = true;
+                return;
+            }
+            dirtyIds.add(id);
+        }
+    }
+
+    // Pulls in entries added since the last refresh and re-reads edited ones. Returns the number of rows touched.
+    public int refresh() {
+        boolean overflowed;
+        synchronized (dirtyIds) {
+            tracking = true; // before the scan, so edits made while it runs are re-read next time
+            overflowed = dirtyOverflow;
+        }
+        if (overflowed) {
+            rebuild();
+            return size();
+        }
+
+        int after;
+        lock.readLock().lock();
+        try { after = maxEntryId; } finally { lock.readLock().unlock(); }
+
+        // Rows are parsed into a small fixed batch and copied into the column buffers a batch at a time, so even a
+        // full load of millions of rows never holds more than one batch on the heap. The write lock is only taken
+        // per batch, so reports keep running while the database is scanned.
+        Staging added = new Staging(false);
+        DataManager.scanEntriesAfter(after, added);
+        added.flush();
+
+        List<Integer> dirty;
+        synchronized (dirtyIds) { dirty = new ArrayList<>(dirtyIds); dirtyIds.clear(); }
+        Staging changed = new Staging(true);
+        if (!dirty.isEmpty()) DataManager.scanEntriesById(dirty, changed);
+        changed.flush();
+        return added.total + changed.total;
+    }
+
+    // Drops everything and reloads from scratch, e.g. after users (and their entries) were deleted.
+    public void rebuild() {
+        lock.writeLock().lock();
+        try {
+            size = 0;
+            maxEntryId = 0;
+            maxUserId = 0;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        synchronized (dirtyIds) {
+            dirtyIds.clear();
+            dirtyOverflow = false;
+        }
+        refresh();
+    }
+
+    // ==========================================
+    //                 KERNELS
+    // ==========================================
+
+    // The kernels below have no data-dependent branches in their row loops: a row outside the range (or otherwise
+    // not counted) still does its add, but with a 0/1 mask multiplied in and its slot index folded to 0, so the
+    // cost per row doesn't depend on how the data is distributed.
+
+    // Total worked minutes in [fromDay, toDay] (epoch days, inclusive).
+    public long totalWorked(LocalDate from, LocalDate to) {
+        int lo = (int) from.toEpochDay();
+        int hi = (int) to.toEpochDay();
+        lock.readLock().lock();
+        try {
+            long sum = 0;
+            for (int i = 0; i < size; i++) {
+                sum += worked.get(i) * inRange(epochDay.get(i), lo, hi);
+            }
+            return sum;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Worked minutes per user id in the range; the result is indexed by user id.
+    public long[] workedByUser(LocalDate from, LocalDate to) {
+        int lo = (int) from.toEpochDay();
+        int hi = (int) to.toEpochDay();
+        lock.readLock().lock();
+        try {
+            long[] sums = new long[maxUserId + 1];
+            for (int i = 0; i < size; i++) {
+                sums[userId.get(i)] += worked.get(i) * inRange(epochDay.get(i), lo, hi);
+            }
+            return sums;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Worked minutes per day in the range; index 0 is {@code from}.
+    public long[] workedByDay(LocalDate from, LocalDate to) {
+        int lo = (int) from.toEpochDay();
+        int hi = (int) to.toEpochDay();
+        long[] sums = new long[Math.max(0, hi - lo + 1)];
+        if (sums.length == 0) return sums;
+        lock.readLock().lock();
+        try {
+            for (int i = 0; i < size; i++) {
+                int d = epochDay.get(i);
+                int in = inRange(d, lo, hi);
+                sums[(d - lo) * in] += worked.get(i) * in;
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return sums;
+    }
+
+    // Worked minutes per group, where groupOfUser[userId] gives each user's group (e.g. their manager's id)
+    // and users outside the array or with a negative group are skipped. The result is indexed by group.
+    public long[] workedByGroup(int[] groupOfUser, int groupCount, LocalDate from, LocalDate to) {
+        int lo = (int) from.toEpochDay();
+        int hi = (int) to.toEpochDay();
+        long[] sums = new long[groupCount];
+        if (groupCount == 0) return sums;
+        lock.readLock().lock();
+        try {
+            // Resolve the per-user lookup once so the row loop is a plain gather; skipped users get weight 0.
+            int[] slot = new int[maxUserId + 1];
+            int[] counted = new int[maxUserId + 1];
+            for (int u = 0; u < slot.length && u < groupOfUser.length; u++) {
+                if (groupOfUser[u] < 0) continue;
+                slot[u] = groupOfUser[u];
+                counted[u] = 1;
+            }
+            for (int i = 0; i < size; i++) {
+                int u = userId.get(i);
+                sums[slot[u]] += worked.get(i) * (inRange(epochDay.get(i), lo, hi) & counted[u]);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return sums;
+    }
+
+    // Number of punches made in each hour of the day (index 0-23) over the range.
+    public long[] punchesByHour(LocalDate from, LocalDate to) {
+        int lo = (int) from.toEpochDay();
+        int hi = (int) to.toEpochDay();
+        long[] counts = new long[24];
+        lock.readLock().lock();
+        try {
+            for (int i = 0; i < size; i++) {
+                int m = startMinute.get(i);
+                int in = inRange(epochDay.get(i), lo, hi) & (m >>> 31 ^ 1); // unparseable times are stored as -1
+                counts[(m / 60) * in] += in;
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return counts;
+    }
+
+    // 1 if lo <= d <= hi, else 0.
+    private static int inRange(int d, int lo, int hi) {
+        return ((d - lo) | (hi - d)) >>> 31 ^ 1;
+    }
+
+    // ==========================================
+    //                 STORAGE
+    // ==========================================
+
+    private void append(int id, int user, int day, int minute, int minutes) {
+        if (size == capacity) allocate(capacity * 2);
+        entryId.put(size, id);
+        userId.put(size, user);
+        epochDay.put(size, day);
+        startMinute.put(size, minute);
+        worked.put(size, minutes);
+        size++;
+        maxEntryId = id;
+        maxUserId = Math.max(maxUserId, user);
+    }
+
+    // Rows are appended in id order, so the id column is sorted.
+    private int rowOf(int id) {
+        int lo = 0, hi = size - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int v = entryId.get(mid);
+            if (v < id) lo = mid + 1;
+            else if (v > id) hi = mid - 1;
+            else return mid;
+        }
+        return -1;
+    }
+
+    private void allocate(int newCapacity) {
+        entryId = grow(entryId, newCapacity);
+        userId = grow(userId, newCapacity);
+        epochDay = grow(epochDay, newCapacity);
+        startMinute = grow(startMinute, newCapacity);
+        worked = grow(worked, newCapacity);
+        capacity = newCapacity;
+    }
+
+    private IntBuffer grow(IntBuffer old, int newCapacity) {
+        IntBuffer fresh = ByteBuffer.allocateDirect(newCapacity * Integer.BYTES).order(ByteOrder.nativeOrder()).asIntBuffer();
+        if (old != null) {
+            IntBuffer src = old.duplicate();
+            src.position(0).limit(size);
+            fresh.put(src);
+            fresh.clear();
+        }
+        return fresh;
+    }
+
+    // One batch of parsed rows waiting to be applied under the write lock; flushed whenever it fills up.
+    private final class Staging implements RowSink {
+        private static final int BATCH = 4096;
+        final int[] ids = new int[BATCH], users = new int[BATCH], days = new int[BATCH], minutes = new int[BATCH], workedMinutes = new int[BATCH];
+        final boolean update; // false: append new rows; true: overwrite rows already cached
+        int size = 0;
+        int total = 0;
+        int lastId = 0;
+
+        Staging(boolean update) { this.update = update; }
+
+        @Override
+        public void accept(int id, int user, String date, String action, String time, String duration) {
+            lastId = Math.max(lastId, id);
+            int day = parseEpochDay(date);
+            if (day == Integer.MIN_VALUE) return;
+            ids[size] = id;
+            users[size] = Math.max(0, user);
+            days[size] = day;
+            minutes[size] = parseMinuteOfDay(time);
+            workedMinutes[size] = "Clock Out".equals(action) ? (int) DataManager.parseDurationMinutes(duration) : 0;
+            if (++size == BATCH) flush();
+        }
+
+        void flush() {
+            lock.writeLock().lock();
+            try {
+                for (int i = 0; i < size; i++) {
+                    if (update) {
+                        int row = rowOf(ids[i]);
+                        if (row < 0) continue;
+                        userId.put(row, users[i]);
+                        epochDay.put(row, days[i]);
+                        startMinute.put(row, minutes[i]);
+                        worked.put(row, workedMinutes[i]);
+                        maxUserId = Math.max(maxUserId, users[i]);
+                    } else {
+                        if (ids[i] <= maxEntryId) continue; // another refresh got here first
+                        append(ids[i], users[i], days[i], minutes[i], workedMinutes[i]);
+                    }
+                }
+                if (!update) maxEntryId = Math.max(maxEntryId, lastId); // skip past rows with unparseable dates too
+            } finally {
+                lock.writeLock().unlock();
+            }
+            total += size;
+            size = 0;
+        }
+    }
+
+    // MM/dd/yyyy -> epoch day, without going through DateTimeFormatter for every row.
+    static int parseEpochDay(String date) {
+        try {
+            return (int) LocalDate.of(Integer.parseInt(date.substring(6, 10)), Integer.parseInt(date.substring(0, 2)), Integer.parseInt(date.substring(3, 5))).toEpochDay();
+        } catch (Exception e) { return Integer.MIN_VALUE; }
+    }
+
+    // hh:mm AM/PM -> minute of the day, or -1 if unparseable.
+    static int parseMinuteOfDay(String time) {
+        try {
+            int h = Integer.parseInt(time.substring(0, 2)) % 12;
+            int m = Integer.parseInt(time.substring(3, 5));
+            if (time.regionMatches(true, 6, "PM", 0, 2)) h += 12;
+            return h * 60 + m;
+        } catch (Exception e) { return -1; }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,98 @@
+package com.timeclock;
+
+import javafx.application.Platform;
+import javafx.collections.ObservableList;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+// Non-blocking front for DataManager so the FX thread never waits on disk.
+// Reads run on a small pool of reader threads; writes go through DataManager's single writer
+// thread so they stay serialized. Use FX_THREAD with thenAcceptAsync/whenCompleteAsync to get
+// back onto the JavaFX application thread, and a RequestScope to drop pending reads when a screen closes.
+public class AsyncDataManager {
+
+    public static final Executor FX_THREAD = Platform::runLater;
+
+    private static final int READER_THREADS = Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors()));
+    private static final ExecutorService readExecutor = Executors.newFixedThreadPool(READER_THREADS, new ThreadFactory() {
+        private final AtomicInteger n = new AtomicInteger();
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "clockwise-reader-" + n.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    });
+
+    private AsyncDataManager() {}
+
+    // --- Reads ---
+    public static CompletableFuture<User> authenticate(String username, String password) { return read(() -> DataManager.authenticate(username, password)); }
+    public static CompletableFuture<ObservableList<TimeEntry>> loadTimeEntriesForUser(int userId) { return read(() -> DataManager.loadTimeEntriesForUser(userId)); }
+    public static CompletableFuture<ObservableList<TimeEntry>> loadTimeEntries(int userId, LocalDate start, LocalDate end) { return read(() -> DataManager.loadTimeEntries(userId, start, end)); }
+    public static CompletableFuture<ObservableList<TimeEntry>> loadAllEntries(LocalDate start, LocalDate end) { return read(() -> DataManager.loadAllEntries(start, end)); }
+    public static CompletableFuture<List<Employee>> loadAllEmployees() { return read(DataManager::loadAllEmployees); }
+    public static CompletableFuture<List<Employee>> loadEmployeesReportingTo(int managerId) { return read(() -> DataManager.loadEmployeesReportingTo(managerId)); }
+    public static CompletableFuture<Employee> getEmployeeByUserId(int userId) { return read(() -> DataManager.getEmployeeByUserId(userId)); }
+    public static CompletableFuture<PayrollPeriod> getCurrentPayrollPeriod() { return read(DataManager::getCurrentPayrollPeriod); }
+    public static CompletableFuture<Company> getCompany() { return read(DataManager::getCompany); }
+
+    // --- Writes ---
+    public static CompletableFuture<DataManager.PunchResult> recordPunch(TimeEntry entry, String idempotencyKey) { return write(() -> DataManager.recordPunch(entry, idempotencyKey)); }
+    public static CompletableFuture<Boolean> saveTimeEntry(TimeEntry entry) { return write(() -> DataManager.saveTimeEntry(entry)); }
+    public static CompletableFuture<Boolean> updateTimeEntry(TimeEntry entry) { return write(() -> DataManager.updateTimeEntry(entry)); }
+    public static CompletableFuture<Boolean> updateEmployee(Employee emp) { return write(() -> DataManager.updateEmployee(emp)); }
+    public static CompletableFuture<Boolean> updateUser(User user) { return write(() -> DataManager.updateUser(user)); }
+
+    private static <T> CompletableFuture<T> read(Supplier<T> work) { return submit(readExecutor, work); }
+
+    private static <T> CompletableFuture<T> write(Supplier<T> work) { return submit(DataManager.writeExecutor(), work); }
+
+    // Unlike CompletableFuture.supplyAsync, a request cancelled while still queued never touches the database.
+    private static <T> CompletableFuture<T> submit(ExecutorService executor, Supplier<T> work) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        try {
+            executor.execute(() -> {
+                if (future.isDone()) return;
+                try { future.complete(work.get()); } catch (Throwable t) { future.completeExceptionally(t); }
+            });
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * Groups the requests a screen has in flight so they can all be dropped when it closes.
+     * Cancelled requests that have not started yet are skipped, and thenApply/thenAccept callbacks chained
+     * on them never run; whenComplete/handle callbacks still see the CancellationException.
+     * Only track reads: a punch that is already queued should still be written.
+     */
+    public static class RequestScope {
+        private final Set<CompletableFuture<?>> pending = ConcurrentHashMap.newKeySet();
+        private volatile boolean closed = false;
+
+        public <T> CompletableFuture<T> track(CompletableFuture<T> future) {
+            if (closed) {
+                future.cancel(false);
+                return future;
+            }
+            pending.add(future);
+            future.whenComplete((v, e) -> pending.remove(future));
+            return future;
+        }
+
+        public boolean isClosed() { return closed; }
+
+        public void close() {
+            closed = true;
+            for (CompletableFuture<?> f : pending) f.cancel(false);
+            pending.clear();
+        }
+    }
+}
\ No newline at end of file
@@ -1,6 +1,7 @@
 package com.timeclock;
 
 import javafx.application.Application;
+import javafx.application.Platform;
 import javafx.fxml.FXMLLoader;
 import javafx.geometry.Insets;
 import javafx.scene.Parent;
@@ -10,35 +11,54 @@ import javafx.scene.layout.GridPane;
 import javafx.stage.Stage;
 
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
 public class ClockWiseApp extends Application {
 
     @Override
     public void start(Stage primaryStage) {
-        DataManager.initializeDatabase();
+        StartupTimer.mark("fx start");
+
+        // Warm up the database (driver load, schema probe, bootstrap rows) while the FX thread parses the login view.
+        CompletableFuture<Void> dbReady = CompletableFuture.runAsync(() -> {
+            DataManager.initializeDatabase();
+            StartupTimer.mark("database ready");
+        }, r -> {
+            Thread t = new Thread(r, "clockwise-db-init");
+            t.setDaemon(true);
+            t.start();
+        });
+
+        Parent root;
+        try {
+            FXMLLoader loader = new FXMLLoader(getClass().getResource("/Login.fxml"));
+            root = loader.load();
+            StartupTimer.mark("login view loaded");
+        } catch (Exception e) {
+            e.printStackTrace();
+            return;
+        }
+
+        dbReady.whenComplete((v, err) -> Platform.runLater(() -> showLogin(primaryStage, root)));
+    }
 
+    private void showLogin(Stage primaryStage, Parent root) {
         if (!DataManager.hasCompanyInfo()) {
             showCompanySetupDialog();
         }
 
-        try {
-            FXMLLoader loader = new FXMLLoader(getClass().getResource("/Login.fxml"));
-            Parent root = loader.load();
-            Scene scene = new Scene(root);
-
-            primaryStage.setTitle("ClockWise - Login");
-            primaryStage.setScene(scene);
-            primaryStage.setMinWidth(520);
-            primaryStage.setMinHeight(450);
-            primaryStage.show();
+        Scene scene = new Scene(root);
 
-            primaryStage.setOnCloseRequest(e -> {
-                DataManager.shutdown();
-            });
+        primaryStage.setTitle("ClockWise - Login");
+        primaryStage.setScene(scene);
+        primaryStage.setMinWidth(520);
+        primaryStage.setMinHeight(450);
+        primaryStage.show();
+        StartupTimer.mark("login screen shown");
 
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
+        primaryStage.setOnCloseRequest(e -> {
+            DataManager.shutdown();
+        });
     }
 
     private void showCompanySetupDialog() {
@@ -85,6 +105,7 @@ public class ClockWiseApp extends Application {
     }
 
     public static void main(String[] args) {
+        StartupTimer.mark("main");
         launch(args);
     }
 }
\ No newline at end of file
@@ -2,15 +2,23 @@ package com.timeclock;
 
 import javafx.animation.KeyFrame;
 import javafx.animation.Timeline;
+import javafx.beans.value.ChangeListener;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
+import javafx.event.EventHandler;
 import javafx.fxml.FXML;
+import javafx.scene.Scene;
 import javafx.scene.control.*;
+import javafx.stage.Window;
+import javafx.stage.WindowEvent;
 import javafx.util.Duration;
 import java.time.LocalDateTime;
-import java.time.LocalTime;
 import java.time.format.DateTimeFormatter;
 import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
 
 public class ClockWiseController {
 
@@ -27,15 +35,31 @@ public class ClockWiseController {
     @FXML private TableColumn<TimeEntry, String> colTime;
     @FXML private TableColumn<TimeEntry, String> colDuration;
 
+    private static final DateTimeFormatter CLOCK_TIME_FMT = DateTimeFormatter.ofPattern("hh:mm:ss a");
+    private static final DateTimeFormatter CLOCK_DATE_FMT = DateTimeFormatter.ofPattern("EEEE, MMMM dd, yyyy");
+    private static final int PUNCH_ATTEMPTS = 3;
+
     private ObservableList<TimeEntry> timeEntries = FXCollections.observableArrayList();
     private Timeline clockTimeline;
-    private LocalTime clockInTime = null;         
+    private LocalDateTime clockInTime = null;
     private long totalMealBreakMinutes = 0;
-    private LocalTime mealBreakStartTime = null;
+    private LocalDateTime mealBreakStartTime = null;
     private long todayTotalWorkMinutes = 0;
     private boolean isClockedIn = false;
     private boolean isOnMealBreak = false;
     private int currentUserId = -1;
+    // Buttons stay disabled while the history is loading or a punch is on its way to the database.
+    private boolean loadingEntries = false;
+    private boolean punchInFlight = false;
+    private final AsyncDataManager.RequestScope requests = new AsyncDataManager.RequestScope();
+    // Hooks on the scene and window showing this view; removed in dispose() so the stage doesn't keep a closed screen alive.
+    private final EventHandler<WindowEvent> onWindowHidden = e -> dispose();
+    private final ChangeListener<Window> onWindowChanged = (obs, oldWindow, newWindow) -> {
+        if (newWindow != null) watchWindow(newWindow);
+        else if (oldWindow != null) dispose();
+    };
+    private Scene watchedScene;
+    private Window watchedWindow;
 
     @FXML
     public void initialize() {
@@ -48,20 +72,158 @@ public class ClockWiseController {
         setupButtonActions();
         updateButtonStates();
         updateTodayHoursLabel();
+        disposeWhenClosed();
     }
 
     public void setWelcomeName(String name) {
         if (userNameLabel != null) userNameLabel.setText("Hello, " + name);
     }
 
+    // Stops the clock and drops any reads still pending. Runs by itself when the screen closes (see disposeWhenClosed).
+    public void dispose() {
+        if (clockTimeline != null) clockTimeline.stop();
+        requests.close();
+        watchScene(null);
+    }
+
+    // The screen is gone once this view is taken out of its scene, its scene is taken off the window
+    // (e.g. stage.setScene for the next screen), or the window is hidden.
+    private void disposeWhenClosed() {
+        if (timeLabel == null) return;
+        timeLabel.sceneProperty().addListener((sceneObs, oldScene, newScene) -> {
+            if (newScene == null) {
+                if (oldScene != null) dispose();
+                return;
+            }
+            watchScene(newScene);
+        });
+    }
+
+    // Moves the window listener to the given scene (null: just detach), hooking its current window if it has one.
+    private void watchScene(Scene scene) {
+        if (watchedScene == scene) return;
+        if (watchedScene != null) watchedScene.windowProperty().removeListener(onWindowChanged);
+        watchedScene = scene;
+        watchWindow(null);
+        if (scene == null) return;
+        scene.windowProperty().addListener(onWindowChanged);
+        if (scene.getWindow() != null) watchWindow(scene.getWindow());
+    }
+
+    // Moves the WINDOW_HIDDEN handler to the given window (null: just detach); a window is never hooked twice.
+    private void watchWindow(Window window) {
+        if (watchedWindow == window) return;
+        if (watchedWindow != null) watchedWindow.removeEventHandler(WindowEvent.WINDOW_HIDDEN, onWindowHidden);
+        watchedWindow = window;
+        if (window != null) window.addEventHandler(WindowEvent.WINDOW_HIDDEN, onWindowHidden);
+    }
+
     private void loadUserEntries() {
         if (currentUserId == -1) return;
-        ObservableList<TimeEntry> loaded = DataManager.loadTimeEntriesForUser(currentUserId);
-        if (loaded != null) {
-            timeEntries = loaded;
-            if (timeTable != null) timeTable.setItems(timeEntries);
-            calculateTodayMinutesLocally(loaded);
+        loadingEntries = true;
+        updateButtonStates();
+        requests.track(AsyncDataManager.loadTimeEntriesForUser(currentUserId))
+            .thenApply(loaded -> {
+                // The database is the source of truth; bring this process's presence index up to date with it.
+                List<TimeEntry> byTime = newestFirst(loaded);
+                if (!byTime.isEmpty()) PresenceIndex.getInstance().record(byTime.get(0));
+                return loaded;
+            })
+            .whenCompleteAsync((loaded, err) -> {
+                if (requests.isClosed()) return;
+                loadingEntries = false;
+                if (err != null) err.printStackTrace();
+                if (loaded != null) {
+                    timeEntries = loaded;
+                    if (timeTable != null) timeTable.setItems(timeEntries);
+                    calculateTodayMinutesLocally(loaded);
+                    rebuildShiftState(loaded);
+                }
+                updateButtonStates();
+                updateTodayHoursLabel();
+            }, AsyncDataManager.FX_THREAD);
+    }
+
+    // Another terminal may have punched for this user, so work out the open shift from the stored entries:
+    // the last Clock In, plus any breaks taken since. Shifts may run past midnight.
+    private void rebuildShiftState(List<TimeEntry> loaded) {
+        List<TimeEntry> entries = newestFirst(loaded);
+        PresenceIndex.State state = entries.isEmpty() ? PresenceIndex.State.CLOCKED_OUT : PresenceIndex.stateFor(entries.get(0).getAction());
+        isClockedIn = state != PresenceIndex.State.CLOCKED_OUT;
+        isOnMealBreak = state == PresenceIndex.State.ON_BREAK;
+        clockInTime = null;
+        mealBreakStartTime = null;
+        totalMealBreakMinutes = 0;
+        if (!isClockedIn) return;
+
+        LocalDateTime breakEnd = null;
+        for (TimeEntry entry : entries) {
+            LocalDateTime at = PresenceIndex.timestampOf(entry);
+            String action = entry.getAction();
+            if ("Meal Break End".equals(action)) {
+                breakEnd = at;
+            } else if ("Meal Break Start".equals(action)) {
+                if (breakEnd == null) mealBreakStartTime = at;
+                else if (at != null) totalMealBreakMinutes += Math.max(0, ChronoUnit.MINUTES.between(at, breakEnd));
+                breakEnd = null;
+            } else if ("Clock In".equals(action)) {
+                clockInTime = at;
+                break;
+            }
         }
+        if (clockInTime == null) clockInTime = LocalDateTime.now();
+        if (isOnMealBreak && mealBreakStartTime == null) mealBreakStartTime = LocalDateTime.now();
+    }
+
+    // Entries ordered by when they happened, newest first, since a back-dated correction has the highest id.
+    // Ties and unparseable timestamps fall back to id order.
+    private static List<TimeEntry> newestFirst(List<TimeEntry> entries) {
+        Comparator<TimeEntry> byTime = Comparator.comparing(PresenceIndex::timestampOf, Comparator.nullsFirst(Comparator.<LocalDateTime>naturalOrder()));
+        List<TimeEntry> sorted = new ArrayList<>(entries);
+        sorted.sort(byTime.thenComparingInt(TimeEntry::getId).reversed());
+        return sorted;
+    }
+
+    // Sends the punch to the writer thread and runs onAccepted on the FX thread once it is stored.
+    // The idempotency key is made once per button press, so a retry after a failure can never store the punch twice.
+    private void punch(TimeEntry entry, Runnable onAccepted) {
+        punchInFlight = true;
+        updateButtonStates();
+        submitPunch(entry, UUID.randomUUID().toString(), 1, onAccepted);
+    }
+
+    // A failed write is re-sent with the same key. A punch dated in a closed payroll period is refused with a
+    // message; a rejected punch means our local state was stale, so reload this user's entries from the database instead.
+    private void submitPunch(TimeEntry entry, String idempotencyKey, int attempt, Runnable onAccepted) {
+        AsyncDataManager.recordPunch(entry, idempotencyKey)
+            .whenCompleteAsync((result, err) -> {
+                boolean stored = err == null && (result == DataManager.PunchResult.ACCEPTED || result == DataManager.PunchResult.DUPLICATE);
+                if (!stored && (err != null || result == DataManager.PunchResult.FAILED) && attempt < PUNCH_ATTEMPTS) {
+                    submitPunch(entry, idempotencyKey, attempt + 1, onAccepted);
+                    return;
+                }
+                punchInFlight = false;
+                if (requests.isClosed()) return; // the screen is gone
+                if (stored) {
+                    timeEntries.add(0, entry);
+                    onAccepted.run();
+                } else if (result == DataManager.PunchResult.LOCKED) {
+                    showPayrollClosedAlert();
+                } else {
+                    if (err != null) err.printStackTrace();
+                    loadUserEntries();
+                }
+                updateButtonStates();
+                updateTodayHoursLabel();
+            }, AsyncDataManager.FX_THREAD);
+    }
+
+    private void showPayrollClosedAlert() {
+        Alert alert = new Alert(Alert.AlertType.WARNING);
+        alert.setTitle("Payroll Closed");
+        alert.setHeaderText("Punch not recorded");
+        alert.setContentText("Payroll for this date has been closed, so punches can't be recorded right now. Please see your manager.");
+        alert.show();
     }
 
     private void calculateTodayMinutesLocally(ObservableList<TimeEntry> entries) {
@@ -103,8 +265,8 @@ public class ClockWiseController {
 
     private void updateDateTime() {
         LocalDateTime now = LocalDateTime.now();
-        if (timeLabel != null) timeLabel.setText(now.format(DateTimeFormatter.ofPattern("hh:mm:ss a")));
-        if (dateLabel != null) dateLabel.setText(now.format(DateTimeFormatter.ofPattern("EEEE, MMMM dd, yyyy")));
+        if (timeLabel != null) timeLabel.setText(now.format(CLOCK_TIME_FMT));
+        if (dateLabel != null) dateLabel.setText(now.format(CLOCK_DATE_FMT));
         
         if (isClockedIn && !isOnMealBreak) updateTodayHoursLabel();
     }
@@ -112,8 +274,7 @@ public class ClockWiseController {
     private void updateTodayHoursLabel() {
         long totalMinutes = todayTotalWorkMinutes;
         if (clockInTime != null && isClockedIn) {
-            LocalTime now = LocalTime.now();
-            long diff = ChronoUnit.MINUTES.between(clockInTime, now);
+            long diff = ChronoUnit.MINUTES.between(clockInTime, LocalDateTime.now());
             totalMinutes += Math.max(0, diff - totalMealBreakMinutes);
         }
         if (todayHoursLabel != null) {
@@ -138,9 +299,10 @@ public class ClockWiseController {
 
     private void updateButtonStates() {
         if (clockInBtn == null) return;
-        clockInBtn.setDisable(isClockedIn);
-        clockOutBtn.setDisable(!isClockedIn);
-        mealBtn.setDisable(!isClockedIn);
+        boolean busy = loadingEntries || punchInFlight;
+        clockInBtn.setDisable(busy || isClockedIn);
+        clockOutBtn.setDisable(busy || !isClockedIn);
+        mealBtn.setDisable(busy || !isClockedIn);
         if (isOnMealBreak) {
             mealBtn.setText("END BREAK");
             mealBtn.setStyle("-fx-background-color: #10b981; -fx-text-fill: white; -fx-font-weight: bold; -fx-padding: 12 20;");
@@ -152,26 +314,22 @@ public class ClockWiseController {
 
     private void handleClockIn() {
         LocalDateTime now = LocalDateTime.now();
-        clockInTime = now.toLocalTime();
-        isClockedIn = true;
-        totalMealBreakMinutes = 0;
-        
         String time = now.format(DateTimeFormatter.ofPattern("hh:mm a"));
         String date = now.format(DateTimeFormatter.ofPattern("MM/dd/yyyy"));
         
         TimeEntry entry = new TimeEntry(currentUserId, date, "Clock In", time, "-");
-        timeEntries.add(0, entry);
-        DataManager.saveTimeEntry(entry);
-        
-        updateButtonStates();
-        updateTodayHoursLabel();
+        punch(entry, () -> {
+            clockInTime = now;
+            isClockedIn = true;
+            totalMealBreakMinutes = 0;
+        });
     }
 
     private void handleClockOut() {
         if (!isClockedIn || isOnMealBreak) return;
         LocalDateTime now = LocalDateTime.now();
         
-        long workMinutes = ChronoUnit.MINUTES.between(clockInTime, now.toLocalTime()) - totalMealBreakMinutes;
+        long workMinutes = ChronoUnit.MINUTES.between(clockInTime, now) - totalMealBreakMinutes;
         if (workMinutes < 0) workMinutes = 0;
         
         String duration = String.format("%dh %dm", workMinutes/60, workMinutes%60);
@@ -179,13 +337,12 @@ public class ClockWiseController {
         String date = now.format(DateTimeFormatter.ofPattern("MM/dd/yyyy"));
         
         TimeEntry entry = new TimeEntry(currentUserId, date, "Clock Out", time, duration);
-        timeEntries.add(0, entry);
-        DataManager.saveTimeEntry(entry);
-        
-        todayTotalWorkMinutes += workMinutes;
-        isClockedIn = false;
-        clockInTime = null;
-        updateButtonStates();
+        long worked = workMinutes;
+        punch(entry, () -> {
+            todayTotalWorkMinutes += worked;
+            isClockedIn = false;
+            clockInTime = null;
+        });
     }
 
     private void handleMealBreak() {
@@ -195,20 +352,20 @@ public class ClockWiseController {
         String date = now.format(DateTimeFormatter.ofPattern("MM/dd/yyyy"));
         
         if (!isOnMealBreak) {
-            mealBreakStartTime = now.toLocalTime();
-            isOnMealBreak = true;
             TimeEntry entry = new TimeEntry(currentUserId, date, "Meal Break Start", time, "-");
-            timeEntries.add(0, entry);
-            DataManager.saveTimeEntry(entry);
+            punch(entry, () -> {
+                mealBreakStartTime = now;
+                isOnMealBreak = true;
+            });
         } else {
-            long mins = ChronoUnit.MINUTES.between(mealBreakStartTime, now.toLocalTime());
-            totalMealBreakMinutes += mins;
+            long mins = ChronoUnit.MINUTES.between(mealBreakStartTime, now);
             String dur = String.format("%dh %dm", mins/60, mins%60);
             TimeEntry entry = new TimeEntry(currentUserId, date, "Meal Break End", time, dur);
-            timeEntries.add(0, entry);
-            DataManager.saveTimeEntry(entry);
-            isOnMealBreak = false;
+            punch(entry, () -> {
+                totalMealBreakMinutes += mins;
+                mealBreakStartTime = null;
+                isOnMealBreak = false;
+            });
         }
-        updateButtonStates();
     }
 }
\ No newline at end of file
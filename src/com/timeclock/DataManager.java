@@ -5,6 +5,7 @@ import javafx.collections.ObservableList;
 
 import java.sql.*;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.time.LocalTime;
 import java.time.format.DateTimeFormatter;
 import java.time.temporal.ChronoUnit;
@@ -13,94 +14,200 @@ import java.util.concurrent.*;
 
 public class DataManager {
 
-    private static final String DB_URL = "jdbc:sqlite:" + System.getProperty("user.dir") + "/clockwise.db";
+    // -Dclockwise.db=<file> points the app (or the simulator) at a different database file.
+    private static final String DB_PATH = System.getProperty("clockwise.db", System.getProperty("user.dir") + "/clockwise.db");
+    private static final String DB_URL = "jdbc:sqlite:" + DB_PATH;
     private static final ExecutorService writeExecutor = Executors.newSingleThreadExecutor();
 
     static {
         try { Class.forName("org.sqlite.JDBC"); } catch (ClassNotFoundException e) { e.printStackTrace(); }
     }
 
+    // Bump whenever the schema below changes so existing databases re-run the DDL once.
+    private static final int SCHEMA_VERSION = 6;
+
+    // Filled in by initializeDatabase() so the UI can skip a round trip before showing the login screen.
+    private static volatile Boolean companyInfoPresent = null;
+
     public static void initializeDatabase() {
         try (Connection conn = DriverManager.getConnection(DB_URL);
              Statement stmt = conn.createStatement()) {
 
             stmt.execute("PRAGMA foreign_keys = ON;");
 
-            stmt.execute("""
-                CREATE TABLE IF NOT EXISTS Employees (
-                    id INTEGER PRIMARY KEY AUTOINCREMENT,
-                    name TEXT NOT NULL,
-                    role TEXT NOT NULL,
-                    hourly_rate REAL,
-                    monthly_salary REAL,
-                    manager_id INTEGER
-                )
-            """);
-
-            stmt.execute("""
-                CREATE TABLE IF NOT EXISTS Users (
-                    id INTEGER PRIMARY KEY AUTOINCREMENT,
-                    username TEXT UNIQUE NOT NULL,
-                    password_hash TEXT NOT NULL,
-                    role TEXT NOT NULL,
-                    employee_id INTEGER,
-                    FOREIGN KEY(employee_id) REFERENCES Employees(id) ON DELETE CASCADE
-                )
-            """);
-
-            stmt.execute("""
-                CREATE TABLE IF NOT EXISTS TimeEntries (
-                    id INTEGER PRIMARY KEY AUTOINCREMENT,
-                    user_id INTEGER,
-                    date TEXT NOT NULL,
-                    action TEXT NOT NULL,
-                    time TEXT NOT NULL,
-                    duration TEXT,
-                    FOREIGN KEY(user_id) REFERENCES Users(id) ON DELETE CASCADE
-                )
-            """);
-
-            stmt.execute("""
-                CREATE TABLE IF NOT EXISTS PayrollPeriods (
-                    id INTEGER PRIMARY KEY AUTOINCREMENT,
-                    start_date TEXT NOT NULL,
-                    end_date TEXT NOT NULL,
-                    is_active INTEGER NOT NULL
-                )
-            """);
-
-            // NEW: Company Settings Table
-            stmt.execute("""
-                CREATE TABLE IF NOT EXISTS CompanySettings (
-                    id INTEGER PRIMARY KEY CHECK (id = 1),
-                    name TEXT NOT NULL,
-                    location TEXT NOT NULL
-                )
-            """);
-
-            if (countRows("Users") == 0) {
+            if (readSchemaVersion(stmt) < SCHEMA_VERSION) {
+                createSchema(stmt);
+                stmt.execute("PRAGMA user_version = " + SCHEMA_VERSION);
+            }
+
+            if (!hasRows(conn, "Users")) {
                 User admin = new User("admin", hashPassword("admin123"), Role.ADMIN, null);
                 saveUser(admin);
                 System.out.println("Default admin created");
             }
 
-            if (countRows("PayrollPeriods") == 0) {
+            if (!hasRows(conn, "PayrollPeriods")) {
                 LocalDate start = LocalDate.now();
                 LocalDate end = start.plusDays(13); 
                 createPayrollPeriod(start.toString(), end.toString(), true);
             }
 
+            companyInfoPresent = hasRows(conn, "CompanySettings");
+
+            PresenceIndex.getInstance().rebuild(loadLatestEntryPerUser(conn));
+
+            resumePayrollCloseJobs();
+
         } catch (SQLException e) {
             System.err.println("DB Init Error: " + e.getMessage());
         }
     }
 
+    private static int readSchemaVersion(Statement stmt) throws SQLException {
+        try (ResultSet rs = stmt.executeQuery("PRAGMA user_version")) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    private static void createSchema(Statement stmt) throws SQLException {
+        stmt.execute("""
+            CREATE TABLE IF NOT EXISTS Employees (
+                id INTEGER PRIMARY KEY AUTOINCREMENT,
+                name TEXT NOT NULL,
+                role TEXT NOT NULL,
+                hourly_rate REAL,
+                monthly_salary REAL,
+                manager_id INTEGER
+            )
+        """);
+
+        stmt.execute("""
+            CREATE TABLE IF NOT EXISTS Users (
+                id INTEGER PRIMARY KEY AUTOINCREMENT,
+                username TEXT UNIQUE NOT NULL,
+                password_hash TEXT NOT NULL,
+                role TEXT NOT NULL,
+                employee_id INTEGER,
+                FOREIGN KEY(employee_id) REFERENCES Employees(id) ON DELETE CASCADE
+            )
+        """);
+
+        stmt.execute("""
+            CREATE TABLE IF NOT EXISTS TimeEntries (
+                id INTEGER PRIMARY KEY AUTOINCREMENT,
+                user_id INTEGER,
+                date TEXT NOT NULL,
+                action TEXT NOT NULL,
+                time TEXT NOT NULL,
+                duration TEXT,
+                idempotency_key TEXT,
+                FOREIGN KEY(user_id) REFERENCES Users(id) ON DELETE CASCADE
+            )
+        """);
+
+        stmt.execute("""
+            CREATE TABLE IF NOT EXISTS PayrollPeriods (
+                id INTEGER PRIMARY KEY AUTOINCREMENT,
+                start_date TEXT NOT NULL,
+                end_date TEXT NOT NULL,
+                is_active INTEGER NOT NULL,
+                is_locked INTEGER NOT NULL DEFAULT 0
+            )
+        """);
+
+        // Frozen per-user totals written when a payroll period is closed.
+        stmt.execute("""
+            CREATE TABLE IF NOT EXISTS PayrollSnapshots (
+                period_id INTEGER NOT NULL,
+                user_id INTEGER NOT NULL,
+                worked_minutes INTEGER NOT NULL,
+                break_minutes INTEGER NOT NULL,
+                entry_count INTEGER NOT NULL,
+                PRIMARY KEY(period_id, user_id),
+                FOREIGN KEY(period_id) REFERENCES PayrollPeriods(id)
+            )
+        """);
+
+        // Checkpoint for an in-flight period close: users with id <= last_user_id are already snapshotted.
+        // Only entries with id <= cutoff_entry_id (the newest entry when the period was locked) are counted.
+        stmt.execute("""
+            CREATE TABLE IF NOT EXISTS PayrollCloseJobs (
+                period_id INTEGER PRIMARY KEY,
+                status TEXT NOT NULL,
+                last_user_id INTEGER NOT NULL,
+                cutoff_entry_id INTEGER,
+                processed INTEGER NOT NULL,
+                total INTEGER NOT NULL,
+                started_at TEXT NOT NULL,
+                finished_at TEXT,
+                FOREIGN KEY(period_id) REFERENCES PayrollPeriods(id)
+            )
+        """);
+
+        // NEW: Company Settings Table
+        stmt.execute("""
+            CREATE TABLE IF NOT EXISTS CompanySettings (
+                id INTEGER PRIMARY KEY CHECK (id = 1),
+                name TEXT NOT NULL,
+                location TEXT NOT NULL
+            )
+        """);
+
+        // Server-side punch state per user; version is bumped on every change and used for compare-and-set.
+        stmt.execute("""
+            CREATE TABLE IF NOT EXISTS PunchState (
+                user_id INTEGER PRIMARY KEY,
+                state TEXT NOT NULL,
+                version INTEGER NOT NULL,
+                last_entry_id INTEGER,
+                FOREIGN KEY(user_id) REFERENCES Users(id) ON DELETE CASCADE
+            )
+        """);
+
+        addColumnIfMissing(stmt, "TimeEntries", "idempotency_key", "TEXT");
+        addColumnIfMissing(stmt, "PayrollPeriods", "is_locked", "INTEGER NOT NULL DEFAULT 0");
+        addColumnIfMissing(stmt, "PayrollCloseJobs", "cutoff_entry_id", "INTEGER");
+
+        // Serves "latest entry for a user" lookups and the presence index rebuild.
+        stmt.execute("CREATE INDEX IF NOT EXISTS idx_timeentries_user_id ON TimeEntries(user_id, id)");
+        stmt.execute("CREATE UNIQUE INDEX IF NOT EXISTS idx_timeentries_idempotency_key ON TimeEntries(idempotency_key)");
+
+        // One-off backfill so every user with entries has a PunchState row pointing at their latest entry;
+        // the presence index is seeded from these rows instead of scanning TimeEntries on every start.
+        // The CASE mirrors PresenceIndex.stateFor.
+        stmt.execute("""
+            INSERT INTO PunchState (user_id, state, version, last_entry_id)
+            SELECT t.user_id,
+                   CASE t.action WHEN 'Clock In' THEN 'CLOCKED_IN' WHEN 'Meal Break End' THEN 'CLOCKED_IN'
+                                 WHEN 'Meal Break Start' THEN 'ON_BREAK' ELSE 'CLOCKED_OUT' END,
+                   1, t.id
+            FROM TimeEntries t
+            JOIN (SELECT user_id, MAX(id) AS max_id FROM TimeEntries WHERE user_id IS NOT NULL GROUP BY user_id) latest
+              ON t.id = latest.max_id
+            WHERE true
+            ON CONFLICT(user_id) DO UPDATE SET last_entry_id = excluded.last_entry_id WHERE last_entry_id IS NULL
+        """);
+    }
+
+    private static void addColumnIfMissing(Statement stmt, String table, String column, String type) throws SQLException {
+        try (ResultSet rs = stmt.executeQuery("PRAGMA table_info(" + table + ")")) {
+            while (rs.next()) if (column.equalsIgnoreCase(rs.getString("name"))) return;
+        }
+        stmt.execute("ALTER TABLE " + table + " ADD COLUMN " + column + " " + type);
+    }
+
     // ==========================================
     //           COMPANY SETTINGS (NEW)
     // ==========================================
 
     public static boolean hasCompanyInfo() {
-        return countRows("CompanySettings") > 0;
+        Boolean known = companyInfoPresent;
+        if (known != null) return known;
+        try (Connection conn = DriverManager.getConnection(DB_URL)) {
+            boolean present = hasRows(conn, "CompanySettings");
+            companyInfoPresent = present;
+            return present;
+        } catch (SQLException e) { e.printStackTrace(); return false; }
     }
 
     public static void saveCompanyInfo(String name, String location) {
@@ -110,6 +217,7 @@ public class DataManager {
             ps.setString(1, name);
             ps.setString(2, location);
             ps.executeUpdate();
+            companyInfoPresent = true;
         } catch (SQLException e) { e.printStackTrace(); }
     }
 
@@ -164,29 +272,222 @@ public class DataManager {
         return null;
     }
 
-    public static void closeCurrentPayrollAndStartNew() {
+    private static final int PAYROLL_CLOSE_CHUNK = 250;
+    private static final Map<Integer, PayrollCloseJob> payrollCloseJobs = new ConcurrentHashMap<>();
+
+    // TimeEntries.date is MM/dd/yyyy; this rewrites it as yyyy-MM-dd so it compares against period dates.
+    private static final String ENTRY_ISO_DATE = isoDateOf("date");
+
+    // Guards for writes to TimeEntries: true if the row's stored date, or a yyyy-MM-dd parameter, is in a locked period.
+    // Used inside the INSERT/UPDATE itself so the check and the write are one atomic statement.
+    private static final String ROW_IN_LOCKED_PERIOD = "EXISTS (SELECT 1 FROM PayrollPeriods p WHERE p.is_locked = 1 AND " + isoDateOf("TimeEntries.date") + " BETWEEN p.start_date AND p.end_date)";
+    private static final String PARAM_IN_LOCKED_PERIOD = "EXISTS (SELECT 1 FROM PayrollPeriods p WHERE p.is_locked = 1 AND ? BETWEEN p.start_date AND p.end_date)";
+
+    private static String isoDateOf(String column) {
+        return "(substr(" + column + ", 7, 4) || '-' || substr(" + column + ", 1, 2) || '-' || substr(" + column + ", 4, 2))";
+    }
+
+    /**
+     * Starts closing the active period on the writer thread and returns a handle for progress and the new period.
+     * The period is locked against new and edited entries first (if it runs past today it is cut short at
+     * yesterday, so today's punches land in the next period), then per-user totals of the entries that existed
+     * at that moment are snapshotted in checkpointed chunks, and finally the period is closed and the next one
+     * opened in a single transaction. A period that started today and has not ended can't be closed yet:
+     * the job's future then fails with IllegalStateException and nothing is locked.
+     * Calling this again while a close is in flight returns the same job.
+     */
+    public static PayrollCloseJob closeCurrentPayrollAndStartNew() {
         PayrollPeriod current = getCurrentPayrollPeriod();
-        if (current == null) return;
+        if (current == null) return null;
+        return startPayrollClose(current.getId());
+    }
 
-        LocalDate oldEnd = LocalDate.parse(current.getEndDate());
-        LocalDate newStart = oldEnd.plusDays(1);
-        LocalDate newEnd = newStart.plusDays(13); // Bi-weekly
+    // Picks up any close that was interrupted (crash, power loss) from its last checkpoint.
+    public static List<PayrollCloseJob> resumePayrollCloseJobs() {
+        List<PayrollCloseJob> jobs = new ArrayList<>();
+        try (Connection conn = DriverManager.getConnection(DB_URL);
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT period_id FROM PayrollCloseJobs WHERE status = 'RUNNING'")) {
+            while (rs.next()) jobs.add(startPayrollClose(rs.getInt("period_id")));
+        } catch (SQLException e) { e.printStackTrace(); }
+        return jobs;
+    }
 
-        writeExecutor.submit(() -> {
-            try (Connection conn = DriverManager.getConnection(DB_URL)) {
-                conn.setAutoCommit(false);
-                try (PreparedStatement psClose = conn.prepareStatement("UPDATE PayrollPeriods SET is_active = 0 WHERE id = ?")) {
-                    psClose.setInt(1, current.getId());
-                    psClose.executeUpdate();
+    private static PayrollCloseJob startPayrollClose(int periodId) {
+        PayrollCloseJob job = new PayrollCloseJob(periodId);
+        PayrollCloseJob running = payrollCloseJobs.putIfAbsent(periodId, job);
+        if (running != null) return running;
+        queuePayrollStep(job, () -> beginPayrollClose(job));
+        return job;
+    }
+
+    private static void beginPayrollClose(PayrollCloseJob job) {
+        LocalDate today = LocalDate.now();
+        String yesterday = today.minusDays(1).toString();
+        try (Connection conn = DriverManager.getConnection(DB_URL)) {
+            conn.setAutoCommit(false);
+            try {
+                // A period that started today can't be cut short, and locking it would refuse every punch until it ends.
+                try (PreparedStatement ps = conn.prepareStatement("SELECT EXISTS(SELECT 1 FROM PayrollPeriods WHERE id = ? AND is_locked = 0 AND start_date > ? AND end_date >= ?)")) {
+                    ps.setInt(1, job.getPeriodId()); ps.setString(2, yesterday); ps.setString(3, today.toString());
+                    ResultSet rs = ps.executeQuery();
+                    if (rs.next() && rs.getInt(1) == 1) {
+                        conn.rollback();
+                        payrollCloseJobs.remove(job.getPeriodId(), job);
+                        job.fail(new IllegalStateException("Payroll period " + job.getPeriodId() + " has not ended and started today; it can be closed from tomorrow"));
+                        return;
+                    }
                 }
-                try (PreparedStatement psNew = conn.prepareStatement("INSERT INTO PayrollPeriods (start_date, end_date, is_active) VALUES (?, ?, 1)")) {
-                    psNew.setString(1, newStart.toString());
-                    psNew.setString(2, newEnd.toString());
-                    psNew.executeUpdate();
+                try (PreparedStatement ps = conn.prepareStatement("""
+                    INSERT INTO PayrollCloseJobs (period_id, status, last_user_id, cutoff_entry_id, processed, total, started_at)
+                    VALUES (?, 'RUNNING', 0, (SELECT COALESCE(MAX(id), 0) FROM TimeEntries), 0, (SELECT COUNT(*) FROM Users), datetime('now'))
+                    ON CONFLICT(period_id) DO UPDATE SET cutoff_entry_id = excluded.cutoff_entry_id WHERE cutoff_entry_id IS NULL
+                """)) {
+                    ps.setInt(1, job.getPeriodId()); ps.executeUpdate();
+                }
+                // Closing before the period is over: end it yesterday so today's shifts stay open in the next one.
+                try (PreparedStatement ps = conn.prepareStatement("UPDATE PayrollPeriods SET end_date = ? WHERE id = ? AND is_locked = 0 AND start_date <= ? AND end_date >= ?")) {
+                    ps.setString(1, yesterday); ps.setInt(2, job.getPeriodId()); ps.setString(3, yesterday); ps.setString(4, today.toString()); ps.executeUpdate();
+                }
+                try (PreparedStatement ps = conn.prepareStatement("UPDATE PayrollPeriods SET is_locked = 1 WHERE id = ?")) {
+                    ps.setInt(1, job.getPeriodId()); ps.executeUpdate();
                 }
                 conn.commit();
-            } catch (SQLException e) { e.printStackTrace(); }
-        });
+            } catch (SQLException e) { conn.rollback(); throw e; }
+
+            try (PreparedStatement ps = conn.prepareStatement("SELECT status, last_user_id, cutoff_entry_id, processed, total FROM PayrollCloseJobs WHERE period_id = ?")) {
+                ps.setInt(1, job.getPeriodId()); ResultSet rs = ps.executeQuery();
+                if (!rs.next()) throw new SQLException("Missing close job for period " + job.getPeriodId());
+                job.reportProgress(rs.getInt("processed"), rs.getInt("total"));
+                if ("DONE".equals(rs.getString("status"))) {
+                    finishJob(job, getCurrentPayrollPeriod(), null);
+                    return;
+                }
+                int lastUserId = rs.getInt("last_user_id");
+                int cutoffEntryId = rs.getInt("cutoff_entry_id");
+                queuePayrollStep(job, () -> runPayrollCloseChunk(job, lastUserId, cutoffEntryId));
+            }
+        } catch (SQLException e) { finishJob(job, null, e); }
+    }
+
+    // Snapshots the next chunk of users and advances the checkpoint in the same transaction, then queues the next chunk.
+    private static void runPayrollCloseChunk(PayrollCloseJob job, int afterUserId, int cutoffEntryId) {
+        try (Connection conn = DriverManager.getConnection(DB_URL)) {
+            PayrollPeriod period = loadPayrollPeriod(conn, job.getPeriodId());
+            if (period == null) throw new SQLException("Payroll period " + job.getPeriodId() + " no longer exists");
+
+            List<Integer> userIds = new ArrayList<>();
+            try (PreparedStatement ps = conn.prepareStatement("SELECT id FROM Users WHERE id > ? ORDER BY id LIMIT ?")) {
+                ps.setInt(1, afterUserId); ps.setInt(2, PAYROLL_CLOSE_CHUNK); ResultSet rs = ps.executeQuery();
+                while (rs.next()) userIds.add(rs.getInt(1));
+            }
+            if (userIds.isEmpty()) {
+                finishPayrollClose(conn, job, period);
+                return;
+            }
+
+            int firstUserId = userIds.get(0);
+            int lastUserId = userIds.get(userIds.size() - 1);
+            Map<Integer, long[]> totals = new HashMap<>(); // user -> {worked, break, entries}
+            for (int id : userIds) totals.put(id, new long[3]);
+            String sql = "SELECT user_id, action, duration FROM TimeEntries WHERE user_id BETWEEN ? AND ? AND id <= ? AND " + ENTRY_ISO_DATE + " BETWEEN ? AND ?";
+            try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                ps.setInt(1, firstUserId); ps.setInt(2, lastUserId); ps.setInt(3, cutoffEntryId); ps.setString(4, period.getStartDate()); ps.setString(5, period.getEndDate());
+                ResultSet rs = ps.executeQuery();
+                while (rs.next()) {
+                    long[] t = totals.get(rs.getInt("user_id"));
+                    if (t == null) continue;
+                    String action = rs.getString("action");
+                    if ("Clock Out".equals(action)) t[0] += parseDurationMinutes(rs.getString("duration"));
+                    else if ("Meal Break End".equals(action)) t[1] += parseDurationMinutes(rs.getString("duration"));
+                    t[2]++;
+                }
+            }
+
+            int processed = job.getProcessed() + userIds.size();
+            conn.setAutoCommit(false);
+            try {
+                try (PreparedStatement ps = conn.prepareStatement("INSERT OR REPLACE INTO PayrollSnapshots (period_id, user_id, worked_minutes, break_minutes, entry_count) VALUES (?, ?, ?, ?, ?)")) {
+                    for (Map.Entry<Integer, long[]> e : totals.entrySet()) {
+                        ps.setInt(1, job.getPeriodId()); ps.setInt(2, e.getKey()); ps.setLong(3, e.getValue()[0]); ps.setLong(4, e.getValue()[1]); ps.setLong(5, e.getValue()[2]);
+                        ps.addBatch();
+                    }
+                    ps.executeBatch();
+                }
+                try (PreparedStatement ps = conn.prepareStatement("UPDATE PayrollCloseJobs SET last_user_id = ?, processed = ? WHERE period_id = ?")) {
+                    ps.setInt(1, lastUserId); ps.setInt(2, processed); ps.setInt(3, job.getPeriodId()); ps.executeUpdate();
+                }
+                conn.commit();
+            } catch (SQLException e) { conn.rollback(); throw e; }
+
+            job.reportProgress(processed, Math.max(processed, job.getTotal()));
+            // Re-queue instead of looping so other writer tasks can run between chunks.
+            queuePayrollStep(job, () -> runPayrollCloseChunk(job, lastUserId, cutoffEntryId));
+        } catch (SQLException e) { finishJob(job, null, e); }
+    }
+
+    private static void finishPayrollClose(Connection conn, PayrollCloseJob job, PayrollPeriod period) throws SQLException {
+        LocalDate newStart = LocalDate.parse(period.getEndDate()).plusDays(1);
+        LocalDate newEnd = newStart.plusDays(13); // Bi-weekly
+
+        conn.setAutoCommit(false);
+        try {
+            try (PreparedStatement psClose = conn.prepareStatement("UPDATE PayrollPeriods SET is_active = 0, is_locked = 1 WHERE id = ?")) {
+                psClose.setInt(1, period.getId());
+                psClose.executeUpdate();
+            }
+            try (PreparedStatement psNew = conn.prepareStatement("INSERT INTO PayrollPeriods (start_date, end_date, is_active) VALUES (?, ?, 1)")) {
+                psNew.setString(1, newStart.toString());
+                psNew.setString(2, newEnd.toString());
+                psNew.executeUpdate();
+            }
+            try (PreparedStatement psDone = conn.prepareStatement("UPDATE PayrollCloseJobs SET status = 'DONE', finished_at = datetime('now') WHERE period_id = ?")) {
+                psDone.setInt(1, period.getId());
+                psDone.executeUpdate();
+            }
+            conn.commit();
+        } catch (SQLException e) { conn.rollback(); throw e; }
+
+        job.reportProgress(job.getProcessed(), job.getProcessed());
+        finishJob(job, getCurrentPayrollPeriod(), null);
+    }
+
+    // After shutdown() the writer refuses new work; the job stays RUNNING in the database and resumes on next start.
+    private static void queuePayrollStep(PayrollCloseJob job, Runnable step) {
+        try { writeExecutor.execute(step); } catch (RejectedExecutionException e) { finishJob(job, null, e); }
+    }
+
+    private static void finishJob(PayrollCloseJob job, PayrollPeriod next, Throwable error) {
+        payrollCloseJobs.remove(job.getPeriodId(), job);
+        if (error != null) {
+            System.err.println("Payroll close for period " + job.getPeriodId() + " stopped; it will resume from its last checkpoint: " + error.getMessage());
+            job.fail(error);
+        } else {
+            job.complete(next);
+        }
+    }
+
+    // Frozen totals for a closed period, keyed by user id: {worked minutes, break minutes, entry count}.
+    public static Map<Integer, long[]> loadPayrollSnapshot(int periodId) {
+        Map<Integer, long[]> map = new LinkedHashMap<>();
+        try (Connection conn = DriverManager.getConnection(DB_URL); PreparedStatement ps = conn.prepareStatement("SELECT * FROM PayrollSnapshots WHERE period_id = ? ORDER BY user_id")) {
+            ps.setInt(1, periodId); ResultSet rs = ps.executeQuery();
+            while (rs.next()) map.put(rs.getInt("user_id"), new long[] { rs.getLong("worked_minutes"), rs.getLong("break_minutes"), rs.getLong("entry_count") });
+        } catch (SQLException e) { e.printStackTrace(); }
+        return map;
+    }
+
+    private static PayrollPeriod loadPayrollPeriod(Connection conn, int id) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement("SELECT * FROM PayrollPeriods WHERE id = ?")) {
+            ps.setInt(1, id); ResultSet rs = ps.executeQuery();
+            if (rs.next()) return new PayrollPeriod(rs.getInt("id"), rs.getString("start_date"), rs.getString("end_date"), rs.getInt("is_active") == 1);
+        }
+        return null;
+    }
+
+    // MM/dd/yyyy -> yyyy-MM-dd for comparing against period dates, or null if the date can't be parsed.
+    private static String toIsoDate(String entryDate) {
+        try { return LocalDate.parse(entryDate, DateTimeFormatter.ofPattern("MM/dd/yyyy")).toString(); } catch (Exception e) { return null; }
     }
 
     private static void createPayrollPeriod(String start, String end, boolean active) {
@@ -243,31 +544,282 @@ public class DataManager {
         } catch (SQLException e) { e.printStackTrace(); } return null;
     }
 
+    // Always asks the database: the presence index only sees punches made by this process, not other terminals.
     public static String getLatestEntryAction(int userId) {
-        String sql = "SELECT action FROM TimeEntries WHERE user_id = ? ORDER BY id DESC LIMIT 1";
-        try (Connection conn = DriverManager.getConnection(DB_URL); PreparedStatement ps = conn.prepareStatement(sql)) {
-            ps.setInt(1, userId); ResultSet rs = ps.executeQuery(); if (rs.next()) return rs.getString("action");
+        try (Connection conn = DriverManager.getConnection(DB_URL)) {
+            TimeEntry latest = loadLatestEntry(conn, userId);
+            if (latest != null) return latest.getAction();
         } catch (SQLException e) { e.printStackTrace(); } return "Unknown";
     }
 
+    // TimeEntries.time is hh:mm AM/PM; this turns it into minutes since midnight so entries sort by when they happened.
+    private static final String ENTRY_MINUTE_OF_DAY = "((CAST(substr(time, 1, 2) AS INTEGER) % 12 + CASE WHEN upper(substr(time, 7, 2)) = 'PM' THEN 12 ELSE 0 END) * 60 + CAST(substr(time, 4, 2) AS INTEGER))";
+
+    // The user's latest entry by date and time (not by id: an admin may insert a back-dated correction), or null.
+    private static TimeEntry loadLatestEntry(Connection conn, int userId) throws SQLException {
+        String sql = "SELECT * FROM TimeEntries WHERE user_id = ? ORDER BY " + ENTRY_ISO_DATE + " DESC, " + ENTRY_MINUTE_OF_DAY + " DESC, id DESC LIMIT 1";
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setInt(1, userId); ResultSet rs = ps.executeQuery();
+            return rs.next() ? new TimeEntry(rs.getInt("id"), rs.getInt("user_id"), rs.getString("date"), rs.getString("action"), rs.getString("time"), rs.getString("duration")) : null;
+        }
+    }
+
+    // One row per user: their most recent entry, found through PunchState.last_entry_id (a primary key
+    // lookup per user) so startup cost follows the number of users, not the number of entries.
+    private static List<TimeEntry> loadLatestEntryPerUser(Connection conn) throws SQLException {
+        List<TimeEntry> list = new ArrayList<>();
+        String sql = "SELECT t.* FROM PunchState p JOIN TimeEntries t ON t.id = p.last_entry_id";
+        try (Statement stmt = conn.createStatement(); ResultSet rs = stmt.executeQuery(sql)) {
+            while (rs.next()) list.add(new TimeEntry(rs.getInt("id"), rs.getInt("user_id"), rs.getString("date"), rs.getString("action"), rs.getString("time"), rs.getString("duration")));
+        }
+        return list;
+    }
+
+    // Re-derives a user's punch state and presence from their latest entry after an out-of-band edit.
+    private static void refreshLatestState(int userId) {
+        if (userId <= 0) return;
+        try (Connection conn = DriverManager.getConnection(DB_URL)) {
+            TimeEntry latest = loadLatestEntry(conn, userId);
+            syncPunchState(conn, userId, latest == null ? null : latest.getAction(), latest == null ? null : latest.getId());
+            if (PresenceIndex.getInstance().isLoaded()) PresenceIndex.getInstance().replace(userId, latest);
+        } catch (SQLException e) { e.printStackTrace(); }
+    }
+
     // ==========================================
-    //              TIME ENTRIES
+    //                 PUNCHES
     // ==========================================
 
-    public static void saveTimeEntry(TimeEntry entry) {
-        String sql = "INSERT INTO TimeEntries(user_id, date, action, time, duration) VALUES (?, ?, ?, ?, ?)";
-        try (Connection conn = DriverManager.getConnection(DB_URL); PreparedStatement ps = conn.prepareStatement(sql)) {
-            if (entry.getUserId() <= 0) ps.setNull(1, Types.INTEGER); else ps.setInt(1, entry.getUserId());
-            ps.setString(2, entry.getDate()); ps.setString(3, entry.getAction()); ps.setString(4, entry.getTime()); ps.setString(5, entry.getDuration()); ps.executeUpdate();
+    // LOCKED: the punch is dated inside a payroll period that has been closed (or is being closed).
+    public enum PunchResult { ACCEPTED, DUPLICATE, REJECTED, LOCKED, FAILED }
+
+    private static final int PUNCH_MAX_ATTEMPTS = 16;
+    private static final IdempotencyCache punchKeys = new IdempotencyCache(10_000);
+
+    private static final class PunchState {
+        final PresenceIndex.State state;
+        final long version;
+        PunchState(PresenceIndex.State state, long version) { this.state = state; this.version = version; }
+    }
+
+    /**
+     * Records a clock punch after validating it against the user's server-side state.
+     * The state row is advanced with a compare-and-set on its version inside the same transaction as the insert,
+     * so concurrent terminals cannot both apply conflicting punches. Retrying with the same idempotency key
+     * returns DUPLICATE and sets the original entry's id on {@code entry}.
+     */
+    public static PunchResult recordPunch(TimeEntry entry, String idempotencyKey) {
+        if (entry.getUserId() <= 0) return PunchResult.REJECTED;
+        if (idempotencyKey != null) {
+            Integer seen = punchKeys.get(idempotencyKey);
+            if (seen != null) { entry.setId(seen); return PunchResult.DUPLICATE; }
+        }
+        try (Connection conn = DriverManager.getConnection(DB_URL); Statement stmt = conn.createStatement()) {
+            stmt.execute("PRAGMA busy_timeout = 5000");
+            if (idempotencyKey != null) {
+                int existing = findEntryIdByKey(conn, idempotencyKey);
+                if (existing > 0) { punchKeys.put(idempotencyKey, existing); entry.setId(existing); return PunchResult.DUPLICATE; }
+            }
+            for (int attempt = 0; attempt < PUNCH_MAX_ATTEMPTS; attempt++) {
+                PunchState current = readPunchState(conn, entry.getUserId());
+                if (!isValidTransition(current.state, entry.getAction())) return PunchResult.REJECTED;
+
+                int id;
+                conn.setAutoCommit(false);
+                try {
+                    try (PreparedStatement cas = conn.prepareStatement("UPDATE PunchState SET state = ?, version = version + 1 WHERE user_id = ? AND version = ?")) {
+                        cas.setString(1, PresenceIndex.stateFor(entry.getAction()).name()); cas.setInt(2, entry.getUserId()); cas.setLong(3, current.version);
+                        if (cas.executeUpdate() == 0) { conn.rollback(); continue; }
+                    }
+                    id = insertTimeEntry(conn, entry, idempotencyKey);
+                    if (id < 0) { conn.rollback(); return PunchResult.LOCKED; }
+                    try (PreparedStatement ps = conn.prepareStatement("UPDATE PunchState SET last_entry_id = ? WHERE user_id = ?")) {
+                        ps.setInt(1, id); ps.setInt(2, entry.getUserId()); ps.executeUpdate();
+                    }
+                    conn.commit();
+                } catch (SQLException e) {
+                    conn.rollback();
+                    if (idempotencyKey != null && isUniqueViolation(e)) {
+                        int existing = findEntryIdByKey(conn, idempotencyKey);
+                        if (existing > 0) { punchKeys.put(idempotencyKey, existing); entry.setId(existing); return PunchResult.DUPLICATE; }
+                    }
+                    throw e;
+                } finally {
+                    conn.setAutoCommit(true);
+                }
+
+                entry.setId(id);
+                if (idempotencyKey != null) punchKeys.put(idempotencyKey, id);
+                PresenceIndex.getInstance().record(entry);
+                return PunchResult.ACCEPTED;
+            }
+            System.err.println("Punch for user " + entry.getUserId() + " gave up after " + PUNCH_MAX_ATTEMPTS + " conflicting attempts");
         } catch (SQLException e) { e.printStackTrace(); }
+        return PunchResult.FAILED;
+    }
+
+    private static boolean isValidTransition(PresenceIndex.State from, String action) {
+        if ("Clock In".equals(action)) return from == PresenceIndex.State.CLOCKED_OUT;
+        if ("Clock Out".equals(action) || "Meal Break Start".equals(action)) return from == PresenceIndex.State.CLOCKED_IN;
+        if ("Meal Break End".equals(action)) return from == PresenceIndex.State.ON_BREAK;
+        return false;
+    }
+
+    // Reads the user's state row, seeding it from their latest entry the first time they punch.
+    private static PunchState readPunchState(Connection conn, int userId) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement("SELECT state, version FROM PunchState WHERE user_id = ?")) {
+            ps.setInt(1, userId);
+            for (int pass = 0; pass < 2; pass++) {
+                try (ResultSet rs = ps.executeQuery()) {
+                    if (rs.next()) return new PunchState(PresenceIndex.State.valueOf(rs.getString("state")), rs.getLong("version"));
+                }
+                TimeEntry latest = loadLatestEntry(conn, userId);
+                String latestAction = latest == null ? null : latest.getAction();
+                Integer latestId = latest == null ? null : latest.getId();
+                try (PreparedStatement seed = conn.prepareStatement("INSERT INTO PunchState (user_id, state, version, last_entry_id) VALUES (?, ?, 0, ?) ON CONFLICT(user_id) DO NOTHING")) {
+                    seed.setInt(1, userId); seed.setString(2, PresenceIndex.stateFor(latestAction).name());
+                    if (latestId == null) seed.setNull(3, Types.INTEGER); else seed.setInt(3, latestId);
+                    seed.executeUpdate();
+                }
+            }
+        }
+        throw new SQLException("Could not read punch state for user " + userId);
+    }
+
+    // Forces the state row to match a write that bypassed recordPunch; the version still moves forward.
+    private static void syncPunchState(Connection conn, int userId, String latestAction, Integer latestEntryId) throws SQLException {
+        String sql = "INSERT INTO PunchState (user_id, state, version, last_entry_id) VALUES (?, ?, 1, ?) ON CONFLICT(user_id) DO UPDATE SET state = excluded.state, version = version + 1, last_entry_id = excluded.last_entry_id";
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setInt(1, userId); ps.setString(2, PresenceIndex.stateFor(latestAction).name());
+            if (latestEntryId == null) ps.setNull(3, Types.INTEGER); else ps.setInt(3, latestEntryId);
+            ps.executeUpdate();
+        }
+    }
+
+    private static int findEntryIdByKey(Connection conn, String key) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement("SELECT id FROM TimeEntries WHERE idempotency_key = ?")) {
+            ps.setString(1, key); ResultSet rs = ps.executeQuery(); return rs.next() ? rs.getInt(1) : -1;
+        }
+    }
+
+    private static boolean isUniqueViolation(SQLException e) {
+        String msg = e.getMessage();
+        return msg != null && msg.contains("UNIQUE constraint failed");
+    }
+
+    // ==========================================
+    //              TIME ENTRIES
+    // ==========================================
+
+    // Unvalidated insert for admin corrections and imports; live punches should go through recordPunch.
+    // Returns false without writing if the entry is dated inside a locked payroll period. The user's punch state
+    // only moves if the entry is now their latest by date and time, so a back-dated correction leaves it alone.
+    public static boolean saveTimeEntry(TimeEntry entry) {
+        boolean latest;
+        try (Connection conn = DriverManager.getConnection(DB_URL)) {
+            conn.setAutoCommit(false);
+            try {
+                int id = insertTimeEntry(conn, entry, null);
+                if (id < 0) {
+                    conn.rollback();
+                    System.err.println("Time entry dated " + entry.getDate() + " is in a closed payroll period and was not saved");
+                    return false;
+                }
+                entry.setId(id);
+                if (entry.getUserId() > 0) {
+                    TimeEntry newest = loadLatestEntry(conn, entry.getUserId());
+                    latest = newest != null && newest.getId() == id;
+                    if (latest) syncPunchState(conn, entry.getUserId(), entry.getAction(), entry.getId());
+                } else {
+                    latest = false;
+                }
+                conn.commit();
+            } catch (SQLException e) { conn.rollback(); throw e; }
+        } catch (SQLException e) { e.printStackTrace(); return false; }
+        if (latest) PresenceIndex.getInstance().record(entry);
+        return true;
+    }
+
+    /**
+     * Bulk insert for back-fills and imports: every entry goes through one statement in one transaction, instead of
+     * a connection and a commit per row as with saveTimeEntry. Entries dated in a locked payroll period are skipped.
+     * Each user's punch state moves at most once, to their newest imported entry, and only if that is later than the
+     * entry it already points at. Returns the number of entries inserted.
+     */
+    public static int importTimeEntries(List<TimeEntry> entries) {
+        Map<Integer, TimeEntry> newestByUser = new HashMap<>();
+        int inserted = 0;
+        try (Connection conn = DriverManager.getConnection(DB_URL)) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement ps = conn.prepareStatement(INSERT_ENTRY_SQL, Statement.RETURN_GENERATED_KEYS)) {
+                for (TimeEntry entry : entries) {
+                    int id = insertTimeEntry(ps, entry, null);
+                    if (id < 0) continue;
+                    entry.setId(id);
+                    inserted++;
+                    if (entry.getUserId() > 0) newestByUser.merge(entry.getUserId(), entry, (a, b) -> isLater(b, a) ? b : a);
+                }
+                for (Iterator<TimeEntry> it = newestByUser.values().iterator(); it.hasNext(); ) {
+                    TimeEntry newest = it.next();
+                    TimeEntry current = loadPunchStateEntry(conn, newest.getUserId());
+                    if (current == null || isLater(newest, current)) syncPunchState(conn, newest.getUserId(), newest.getAction(), newest.getId());
+                    else it.remove();
+                }
+                conn.commit();
+            } catch (SQLException e) { conn.rollback(); throw e; }
+        } catch (SQLException e) { e.printStackTrace(); return 0; }
+        for (TimeEntry newest : newestByUser.values()) PresenceIndex.getInstance().record(newest);
+        return inserted;
+    }
+
+    private static final String INSERT_ENTRY_SQL = "INSERT INTO TimeEntries(user_id, date, action, time, duration, idempotency_key) SELECT ?, ?, ?, ?, ?, ? WHERE NOT " + PARAM_IN_LOCKED_PERIOD;
+
+    // Returns the new id, or -1 if nothing was inserted because the date falls in a locked payroll period.
+    private static int insertTimeEntry(Connection conn, TimeEntry entry, String idempotencyKey) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(INSERT_ENTRY_SQL, Statement.RETURN_GENERATED_KEYS)) {
+            return insertTimeEntry(ps, entry, idempotencyKey);
+        }
+    }
+
+    private static int insertTimeEntry(PreparedStatement ps, TimeEntry entry, String idempotencyKey) throws SQLException {
+        if (entry.getUserId() <= 0) ps.setNull(1, Types.INTEGER); else ps.setInt(1, entry.getUserId());
+        ps.setString(2, entry.getDate()); ps.setString(3, entry.getAction()); ps.setString(4, entry.getTime()); ps.setString(5, entry.getDuration()); ps.setString(6, idempotencyKey);
+        ps.setString(7, toIsoDate(entry.getDate()));
+        if (ps.executeUpdate() == 0) return -1; // generated keys would report the previous insert here
+        try (ResultSet keys = ps.getGeneratedKeys()) { return keys.next() ? keys.getInt(1) : -1; }
+    }
+
+    // The entry the user's PunchState row points at, or null.
+    private static TimeEntry loadPunchStateEntry(Connection conn, int userId) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement("SELECT t.* FROM PunchState p JOIN TimeEntries t ON t.id = p.last_entry_id WHERE p.user_id = ?")) {
+            ps.setInt(1, userId); ResultSet rs = ps.executeQuery();
+            return rs.next() ? new TimeEntry(rs.getInt("id"), rs.getInt("user_id"), rs.getString("date"), rs.getString("action"), rs.getString("time"), rs.getString("duration")) : null;
+        }
     }
 
-    public static void updateTimeEntry(TimeEntry entry) {
-        String sql = "UPDATE TimeEntries SET date=?, action=?, time=?, duration=? WHERE id=?";
+    // True if a happened after b, in the same order as loadLatestEntry: by date and time, then by id.
+    private static boolean isLater(TimeEntry a, TimeEntry b) {
+        LocalDateTime at = PresenceIndex.timestampOf(a);
+        LocalDateTime bt = PresenceIndex.timestampOf(b);
+        if (at != null && bt != null && !at.equals(bt)) return at.isAfter(bt);
+        if ((at == null) != (bt == null)) return at != null;
+        return a.getId() > b.getId();
+    }
+
+    // Returns false without writing if either the old or the new date belongs to a locked payroll period.
+    public static boolean updateTimeEntry(TimeEntry entry) {
+        String sql = "UPDATE TimeEntries SET date=?, action=?, time=?, duration=? WHERE id=? AND NOT " + ROW_IN_LOCKED_PERIOD + " AND NOT " + PARAM_IN_LOCKED_PERIOD;
         try (Connection conn = DriverManager.getConnection(DB_URL); PreparedStatement ps = conn.prepareStatement(sql)) {
-            ps.setString(1, entry.getDate()); ps.setString(2, entry.getAction()); ps.setString(3, entry.getTime()); ps.setString(4, entry.getDuration()); ps.setInt(5, entry.getId()); ps.executeUpdate();
-        } catch (SQLException e) { e.printStackTrace(); }
+            ps.setString(1, entry.getDate()); ps.setString(2, entry.getAction()); ps.setString(3, entry.getTime()); ps.setString(4, entry.getDuration()); ps.setInt(5, entry.getId());
+            ps.setString(6, toIsoDate(entry.getDate()));
+            if (ps.executeUpdate() == 0) {
+                System.err.println("Time entry " + entry.getId() + " is missing or in a closed payroll period and cannot be edited");
+                return false;
+            }
+        } catch (SQLException e) { e.printStackTrace(); return false; }
+        AnalyticsCache.getInstance().markDirty(entry.getId());
         recalculateDailyDurations(entry.getUserId(), entry.getDate());
+        refreshLatestState(entry.getUserId());
+        return true;
     }
 
     public static void recalculateDailyDurations(int userId, String date) {
@@ -293,9 +845,34 @@ public class DataManager {
     }
 
     private static void updateEntryDurationInDB(int id, String duration) {
-        try (Connection conn = DriverManager.getConnection(DB_URL); PreparedStatement ps = conn.prepareStatement("UPDATE TimeEntries SET duration=? WHERE id=?")) {
+        try (Connection conn = DriverManager.getConnection(DB_URL); PreparedStatement ps = conn.prepareStatement("UPDATE TimeEntries SET duration=? WHERE id=? AND NOT " + ROW_IN_LOCKED_PERIOD)) {
             ps.setString(1, duration); ps.setInt(2, id); ps.executeUpdate();
         } catch (SQLException e) { e.printStackTrace(); }
+        AnalyticsCache.getInstance().markDirty(id);
+    }
+
+    // Streams entries with id > afterId, in id order, straight into the analytics cache without building TimeEntry objects.
+    static void scanEntriesAfter(int afterId, AnalyticsCache.RowSink sink) {
+        String sql = "SELECT id, user_id, date, action, time, duration FROM TimeEntries WHERE id > ? ORDER BY id";
+        try (Connection conn = DriverManager.getConnection(DB_URL); PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setInt(1, afterId); ResultSet rs = ps.executeQuery();
+            while (rs.next()) sink.accept(rs.getInt(1), rs.getInt(2), rs.getString(3), rs.getString(4), rs.getString(5), rs.getString(6));
+        } catch (SQLException e) { e.printStackTrace(); }
+    }
+
+    static void scanEntriesById(Collection<Integer> ids, AnalyticsCache.RowSink sink) {
+        List<Integer> list = new ArrayList<>(ids);
+        try (Connection conn = DriverManager.getConnection(DB_URL)) {
+            for (int from = 0; from < list.size(); from += 500) {
+                List<Integer> chunk = list.subList(from, Math.min(list.size(), from + 500));
+                String sql = "SELECT id, user_id, date, action, time, duration FROM TimeEntries WHERE id IN (" + String.join(",", Collections.nCopies(chunk.size(), "?")) + ")";
+                try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                    for (int i = 0; i < chunk.size(); i++) ps.setInt(i + 1, chunk.get(i));
+                    ResultSet rs = ps.executeQuery();
+                    while (rs.next()) sink.accept(rs.getInt(1), rs.getInt(2), rs.getString(3), rs.getString(4), rs.getString(5), rs.getString(6));
+                }
+            }
+        } catch (SQLException e) { e.printStackTrace(); }
     }
 
     public static ObservableList<TimeEntry> loadTimeEntries(int userId, LocalDate start, LocalDate end) { return filterEntries("SELECT * FROM TimeEntries WHERE user_id = ? ORDER BY id DESC", userId, start, end); }
@@ -342,6 +919,15 @@ public class DataManager {
             }
         } catch (SQLException e) { e.printStackTrace(); } return list;
     }
+    // Manager's employee id for every user who has one; feeds AnalyticsCache.workedByGroup.
+    public static Map<Integer, Integer> loadManagerIdByUserId() {
+        Map<Integer, Integer> map = new HashMap<>();
+        String sql = "SELECT u.id, e.manager_id FROM Users u JOIN Employees e ON u.employee_id = e.id WHERE e.manager_id IS NOT NULL";
+        try (Connection conn = DriverManager.getConnection(DB_URL); Statement stmt = conn.createStatement(); ResultSet rs = stmt.executeQuery(sql)) {
+            while (rs.next()) map.put(rs.getInt(1), rs.getInt(2));
+        } catch (SQLException e) { e.printStackTrace(); }
+        return map;
+    }
     public static int createEmployee(Employee emp) { return createEmployeeInternal(emp); }
     private static int createEmployeeInternal(Employee emp) {
         String sql = "INSERT INTO Employees(name, role, hourly_rate, monthly_salary, manager_id) VALUES (?, ?, ?, ?, ?)";
@@ -379,6 +965,9 @@ public class DataManager {
     public static String getOrgChart(int id) { return ""; }
     private static String hashPassword(String p) { try { java.security.MessageDigest md = java.security.MessageDigest.getInstance("SHA-256"); byte[] h = md.digest(p.getBytes("UTF-8")); StringBuilder sb = new StringBuilder(); for(byte b:h) sb.append(String.format("%02x",b)); return sb.toString(); } catch(Exception e){return null;}}
     public static String hashPasswordForPublicUse(String p) { return hashPassword(p); }
-    private static long countRows(String t) { try(Connection c=DriverManager.getConnection(DB_URL)) { ResultSet r=c.createStatement().executeQuery("SELECT COUNT(*) FROM "+t); return r.next()?r.getLong(1):0;} catch(Exception e){return 0;}}
+    public static String getDatabasePath() { return DB_PATH; }
+    static long parseDurationMinutes(String d) { if (d == null || d.equals("-")) return 0; try { long m = 0; String rest = d; if (rest.contains("h")) { String[] parts = rest.split("h", 2); m += Long.parseLong(parts[0].trim()) * 60; rest = parts[1]; } if (rest.contains("m")) m += Long.parseLong(rest.replace("m", "").trim()); return m; } catch (Exception e) { return 0; } }
+    private static boolean hasRows(Connection c, String t) { try(Statement s=c.createStatement(); ResultSet r=s.executeQuery("SELECT EXISTS(SELECT 1 FROM "+t+" LIMIT 1)")) { return r.next() && r.getInt(1)==1; } catch(SQLException e){return false;}}
+    static ExecutorService writeExecutor() { return writeExecutor; }
     public static void shutdown() { writeExecutor.shutdown(); }
 }
\ No newline at end of file
@@ -0,0 +1,26 @@
+package com.timeclock;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Bounded LRU of recently seen punch idempotency keys and the entry id each one produced.
+// Only a fast path: the unique index on TimeEntries.idempotency_key is what actually guarantees no duplicates.
+public class IdempotencyCache {
+
+    private final Map<String, Integer> entries;
+
+    public IdempotencyCache(int capacity) {
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Integer> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    public synchronized Integer get(String key) { return entries.get(key); }
+
+    public synchronized void put(String key, int entryId) { entries.put(key, entryId); }
+
+    public synchronized int size() { return entries.size(); }
+}
\ No newline at end of file
@@ -0,0 +1,53 @@
+package com.timeclock;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+// Handle for a payroll period close running in the background. DataManager drives the work in
+// checkpointed chunks of employees; this object only carries progress and the final result.
+public class PayrollCloseJob {
+
+    // Called on the writer thread; UI code should hop to Platform.runLater.
+    public interface ProgressListener {
+        void progress(int processedEmployees, int totalEmployees);
+    }
+
+    private final int periodId;
+    private final CompletableFuture<PayrollPeriod> completion = new CompletableFuture<>();
+    private final List<ProgressListener> listeners = new CopyOnWriteArrayList<>();
+    private volatile int processed = 0;
+    private volatile int total = 0;
+
+    PayrollCloseJob(int periodId) {
+        this.periodId = periodId;
+    }
+
+    public int getPeriodId() { return periodId; }
+    public int getProcessed() { return processed; }
+    public int getTotal() { return total; }
+    public double getProgress() { return total == 0 ? (completion.isDone() ? 1.0 : 0.0) : (double) processed / total; }
+    public boolean isDone() { return completion.isDone(); }
+
+    // Completes with the newly opened payroll period once the close has been committed.
+    public CompletableFuture<PayrollPeriod> completion() { return completion; }
+
+    public void addProgressListener(ProgressListener l) {
+        listeners.add(l);
+        l.progress(processed, total);
+    }
+
+    public void removeProgressListener(ProgressListener l) { listeners.remove(l); }
+
+    void reportProgress(int processed, int total) {
+        this.processed = processed;
+        this.total = total;
+        for (ProgressListener l : listeners) {
+            try { l.progress(processed, total); } catch (Exception e) { e.printStackTrace(); }
+        }
+    }
+
+    void complete(PayrollPeriod next) { completion.complete(next); }
+
+    void fail(Throwable t) { completion.completeExceptionally(t); }
+}
\ No newline at end of file
@@ -0,0 +1,144 @@
+package com.timeclock;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+// In-memory view of who is currently on the clock, keyed by user id.
+// Built once from the latest entry per user and then kept current by DataManager on every punch,
+// so headcounts and subscriptions never touch the database. The index is per process: it only sees
+// punches written through this process's DataManager, so anything that must reflect other terminals
+// (a user's last action, punch validation) reads the database instead.
+public class PresenceIndex {
+
+    public enum State { CLOCKED_IN, ON_BREAK, CLOCKED_OUT }
+
+    public static class Presence {
+        private final int userId;
+        private final int entryId;
+        private final State state;
+        private final String action;
+        private final LocalDateTime since;
+
+        public Presence(int userId, int entryId, State state, String action, LocalDateTime since) {
+            this.userId = userId;
+            this.entryId = entryId;
+            this.state = state;
+            this.action = action;
+            this.since = since;
+        }
+
+        public int getUserId() { return userId; }
+        public int getEntryId() { return entryId; }
+        public State getState() { return state; }
+        public String getAction() { return action; }
+        public LocalDateTime getSince() { return since; }
+    }
+
+    // Listeners are called on the thread that recorded the punch, while the index is locked, so every
+    // subscriber sees a user's changes in the order they were applied. Keep them short; UI code should
+    // hop to Platform.runLater.
+    public interface Listener {
+        void presenceChanged(Presence previous, Presence current);
+    }
+
+    private static final PresenceIndex INSTANCE = new PresenceIndex();
+    private static final DateTimeFormatter DATE_FMT = DateTimeFormatter.ofPattern("MM/dd/yyyy");
+    private static final DateTimeFormatter TIME_FMT = DateTimeFormatter.ofPattern("hh:mm a", Locale.US);
+
+    private final Map<Integer, Presence> byUser = new ConcurrentHashMap<>();
+    private final int[] counts = new int[State.values().length];
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private volatile boolean loaded = false;
+
+    private PresenceIndex() {}
+
+    public static PresenceIndex getInstance() { return INSTANCE; }
+
+    public boolean isLoaded() { return loaded; }
+
+    // Replaces the whole index with the given latest-entry-per-user rows.
+    public synchronized void rebuild(Collection<TimeEntry> latestEntries) {
+        byUser.clear();
+        Arrays.fill(counts, 0);
+        for (TimeEntry entry : latestEntries) {
+            Presence p = toPresence(entry);
+            byUser.put(p.getUserId(), p);
+            counts[p.getState().ordinal()]++;
+        }
+        loaded = true;
+    }
+
+    // Applies a newly saved punch. Entries older than, or the same as, the one already indexed for the user are ignored.
+    public void record(TimeEntry entry) {
+        if (entry.getUserId() <= 0) return;
+        Presence current = toPresence(entry);
+        Presence previous;
+        synchronized (this) {
+            previous = byUser.get(current.getUserId());
+            if (previous != null && entry.getId() > 0 && previous.getEntryId() >= entry.getId()) return;
+            byUser.put(current.getUserId(), current);
+            if (previous != null) counts[previous.getState().ordinal()]--;
+            counts[current.getState().ordinal()]++;
+            notifyListeners(previous, current);
+        }
+    }
+
+    // Replaces a user's presence outright, e.g. after their latest entry was edited. A null entry clears it.
+    public void replace(int userId, TimeEntry latest) {
+        Presence current = latest == null ? null : toPresence(latest);
+        Presence previous;
+        synchronized (this) {
+            previous = current == null ? byUser.remove(userId) : byUser.put(userId, current);
+            if (previous != null) counts[previous.getState().ordinal()]--;
+            if (current != null) counts[current.getState().ordinal()]++;
+            if (previous != null || current != null) notifyListeners(previous, current);
+        }
+    }
+
+    public Presence get(int userId) { return byUser.get(userId); }
+
+    public State getState(int userId) {
+        Presence p = byUser.get(userId);
+        return p == null ? State.CLOCKED_OUT : p.getState();
+    }
+
+    public synchronized int count(State state) { return counts[state.ordinal()]; }
+
+    // Everyone who is working or on a meal break.
+    public synchronized int onFloorCount() { return counts[State.CLOCKED_IN.ordinal()] + counts[State.ON_BREAK.ordinal()]; }
+
+    public List<Presence> snapshot(State state) {
+        List<Presence> list = new ArrayList<>();
+        for (Presence p : byUser.values()) if (p.getState() == state) list.add(p);
+        return list;
+    }
+
+    public void addListener(Listener l) { listeners.add(l); }
+    public void removeListener(Listener l) { listeners.remove(l); }
+
+    private void notifyListeners(Presence previous, Presence current) {
+        for (Listener l : listeners) {
+            try { l.presenceChanged(previous, current); } catch (Exception e) { e.printStackTrace(); }
+        }
+    }
+
+    static State stateFor(String action) {
+        if ("Clock In".equals(action) || "Meal Break End".equals(action)) return State.CLOCKED_IN;
+        if ("Meal Break Start".equals(action)) return State.ON_BREAK;
+        return State.CLOCKED_OUT;
+    }
+
+    // When the punch was made, or null if its date or time can't be parsed.
+    static LocalDateTime timestampOf(TimeEntry entry) {
+        try { return LocalDateTime.of(LocalDate.parse(entry.getDate(), DATE_FMT), LocalTime.parse(entry.getTime(), TIME_FMT)); } catch (Exception e) { return null; }
+    }
+
+    private static Presence toPresence(TimeEntry entry) {
+        return new Presence(entry.getUserId(), entry.getId(), stateFor(entry.getAction()), entry.getAction(), timestampOf(entry));
+    }
+}
\ No newline at end of file
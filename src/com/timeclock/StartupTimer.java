@@ -0,0 +1,19 @@
+package com.timeclock;
+
+// Logs how long each stage of application startup took, measured from the first mark in main().
+public final class StartupTimer {
+
+    private static final long START = System.nanoTime();
+    private static long lastMark = START;
+
+    private StartupTimer() {}
+
+    public static synchronized void mark(String stage) {
+        long now = System.nanoTime();
+        long sinceStart = (now - START) / 1_000_000;
+        long sinceLast = (now - lastMark) / 1_000_000;
+        lastMark = now;
+        System.out.println(String.format("[startup] %-24s +%4d ms (total %d ms, %s)",
+                stage, sinceLast, sinceStart, Thread.currentThread().getName()));
+    }
+}
\ No newline at end of file
@@ -0,0 +1,410 @@
+package com.timeclock.sim;
+
+import com.timeclock.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Headless load generator and soak harness. Builds a workforce with a manager hierarchy through the
+ * regular DataManager API, back-fills years of shifts through the batched import path, then replays
+ * concurrent punch storms (through recordPunch, one punch at a time) and report queries on virtual
+ * threads and prints throughput, latency percentiles and database growth per phase.
+ *
+ * Runs against its own database file (never the kiosk's clockwise.db) and recreates it on every run.
+ * Only files under sim-data/ are deleted; pointing --db anywhere else also needs --fresh=true:
+ *
+ *   java com.timeclock.sim.WorkforceSimulator --employees=5000 --years=2 --punches=20000 --threads=256
+ *
+ * Punch stress test: --storm-only=true skips the report phases, and with no history it finishes in seconds.
+ * Run it after any change to the punch path (recordPunch, PunchState, idempotency keys):
+ *
+ *   java com.timeclock.sim.WorkforceSimulator --employees=100 --years=0 --storm-only=true
+ *
+ * Exits with status 1 if any punch failed outright or any user's punch sequence is invalid after the storm.
+ */
+public class WorkforceSimulator {
+
+    private static final DateTimeFormatter DATE_FMT = DateTimeFormatter.ofPattern("MM/dd/yyyy");
+    private static final DateTimeFormatter TIME_FMT = DateTimeFormatter.ofPattern("hh:mm a", Locale.US);
+    private static final int SPAN_OF_CONTROL = 12;
+    private static final int HOT_USERS = 50;
+
+    private final int employees;
+    private final int years;
+    private final int punches;
+    private final int threads;
+    private final int queries;
+    private final int fullReports;
+    private final boolean stormOnly;
+    private final Random random;
+    private final Path dbFile;
+
+    private final List<Integer> userIds = new ArrayList<>();
+    private final List<Integer> managerIds = new ArrayList<>();
+    private final Set<Integer> stormedUsers = ConcurrentHashMap.newKeySet();
+    private final List<String> results = new ArrayList<>();
+    private int violations = 0;
+    private long failedPunches = 0;
+
+    public WorkforceSimulator(Map<String, String> opts, Path dbFile) {
+        this.employees = Integer.parseInt(opts.getOrDefault("employees", "5000"));
+        this.years = Integer.parseInt(opts.getOrDefault("years", "2"));
+        this.punches = Integer.parseInt(opts.getOrDefault("punches", "20000"));
+        this.threads = Integer.parseInt(opts.getOrDefault("threads", "256"));
+        this.queries = Integer.parseInt(opts.getOrDefault("queries", "2000"));
+        this.fullReports = Integer.parseInt(opts.getOrDefault("full-reports", "5"));
+        this.stormOnly = Boolean.parseBoolean(opts.getOrDefault("storm-only", "false"));
+        this.random = new Random(Long.parseLong(opts.getOrDefault("seed", "42")));
+        this.dbFile = dbFile;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> opts = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                System.err.println("Ignoring argument " + arg + " (expected --name=value)");
+                continue;
+            }
+            opts.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+        }
+
+        Path db = Paths.get(opts.getOrDefault("db", "sim-data/clockwise-sim.db")).toAbsolutePath();
+        if (db.equals(Paths.get(System.getProperty("user.dir"), "clockwise.db").toAbsolutePath())) {
+            System.err.println("Refusing to run the simulator against the live database " + db);
+            System.exit(2);
+        }
+        Path simData = Paths.get(System.getProperty("user.dir"), "sim-data").toAbsolutePath().normalize();
+        if (!db.normalize().startsWith(simData) && !Boolean.parseBoolean(opts.getOrDefault("fresh", "false"))) {
+            System.err.println("Refusing to delete " + db + ": it is outside " + simData + " (pass --fresh=true to recreate it anyway)");
+            System.exit(2);
+        }
+        Files.createDirectories(db.getParent());
+        for (String suffix : new String[] { "", "-journal", "-wal", "-shm" }) Files.deleteIfExists(Paths.get(db + suffix));
+
+        // Must be set before DataManager is first touched; it reads the path once.
+        System.setProperty("clockwise.db", db.toString());
+
+        WorkforceSimulator sim = new WorkforceSimulator(opts, db);
+        boolean ok = sim.run();
+        System.exit(ok ? 0 : 1);
+    }
+
+    public boolean run() throws Exception {
+        phase("bootstrap", 1, l -> l.time(DataManager::initializeDatabase));
+        phase("workforce", employees, this::buildWorkforce);
+        phase("history", -1, this::generateHistory);
+        phase("punch storm", punches, this::punchStorm);
+        if (!stormOnly) {
+            phase("report queries", queries, this::reportQueries);
+            phase("full reports", fullReports, this::fullReports);
+            phase("columnar load", -1, l -> l.time(() -> AnalyticsCache.getInstance().refresh()));
+            phase("columnar reports", queries, this::columnarReports);
+        }
+        verifyPunchSequences();
+        DataManager.shutdown();
+
+        System.out.println();
+        System.out.println(String.format("%-16s %10s %9s %10s %9s %9s %9s %9s %12s",
+                "phase", "ops", "secs", "ops/s", "p50 ms", "p95 ms", "p99 ms", "max ms", "db growth"));
+        results.forEach(System.out::println);
+        System.out.println();
+        System.out.println("Database: " + dbFile + " (" + humanBytes(dbSize()) + ")");
+        System.out.println("Users: " + userIds.size() + ", on the floor now: " + PresenceIndex.getInstance().onFloorCount());
+        System.out.println(violations == 0 ? "Punch sequences: OK" : "Punch sequences: FAIL (" + violations + " invalid transitions)");
+        if (failedPunches > 0) System.out.println("Punches that failed outright: " + failedPunches);
+        return violations == 0 && failedPunches == 0;
+    }
+
+    // ==========================================
+    //                 PHASES
+    // ==========================================
+
+    private void buildWorkforce(Latencies lat) {
+        // valueOf throws if a role is renamed, rather than quietly building the workforce with the wrong one.
+        Role managerRole = Role.valueOf("MANAGER");
+        Role staffRole = Role.valueOf("EMPLOYEE");
+        String passwordHash = DataManager.hashPasswordForPublicUse("sim-password");
+
+        int managers = Math.max(1, employees / SPAN_OF_CONTROL);
+        int directors = Math.max(1, managers / SPAN_OF_CONTROL);
+        List<Integer> directorIds = new ArrayList<>();
+
+        for (int i = 0; i < employees; i++) {
+            Employee emp;
+            if (i < directors) {
+                emp = new Manager(0, "Director " + i, managerRole, null, 12000);
+            } else if (i < directors + managers) {
+                emp = new Manager(0, "Manager " + i, managerRole, pick(directorIds), 8000 + random.nextInt(2000));
+            } else {
+                emp = new HourlyEmployee(0, "Employee " + i, staffRole, pick(managerIds), 15 + random.nextInt(26));
+            }
+            final Employee toSave = emp;
+            final int n = i;
+            int[] ids = new int[2];
+            lat.time(() -> {
+                ids[0] = DataManager.createEmployee(toSave);
+                ids[1] = DataManager.saveUser(new User("sim.user" + n, passwordHash, toSave.getRole(), ids[0]));
+            });
+            if (ids[0] <= 0 || ids[1] <= 0) throw new IllegalStateException("Could not create employee " + i);
+            if (i < directors) directorIds.add(ids[0]);
+            else if (i < directors + managers) managerIds.add(ids[0]);
+            userIds.add(ids[1]);
+        }
+        managerIds.addAll(directorIds);
+    }
+
+    // Weekday shifts for everyone: clock in between 6 and 10, a 30-45 minute meal break, 7-9 hours on the floor.
+    // Each day goes in as one DataManager.importTimeEntries batch; row-at-a-time saveTimeEntry would spend hours
+    // on commits at the default size. Latency percentiles in this phase are per day, ops/s is per entry.
+    private void generateHistory(Latencies lat) {
+        LocalDate day = LocalDate.now().minusYears(years);
+        LocalDate today = LocalDate.now();
+        int days = 0;
+        while (day.isBefore(today)) {
+            if (day.getDayOfWeek() != DayOfWeek.SATURDAY && day.getDayOfWeek() != DayOfWeek.SUNDAY) {
+                String date = day.format(DATE_FMT);
+                List<TimeEntry> batch = new ArrayList<>(userIds.size() * 4);
+                for (int userId : userIds) {
+                    if (random.nextInt(100) < 4) continue; // absent
+                    LocalTime in = LocalTime.of(6, 0).plusMinutes(random.nextInt(240));
+                    LocalTime breakStart = in.plusMinutes(210 + random.nextInt(60));
+                    int breakMinutes = 30 + random.nextInt(16);
+                    LocalTime breakEnd = breakStart.plusMinutes(breakMinutes);
+                    int worked = 420 + random.nextInt(121);
+                    LocalTime out = in.plusMinutes(worked + breakMinutes);
+
+                    batch.add(new TimeEntry(userId, date, "Clock In", in.format(TIME_FMT), "-"));
+                    batch.add(new TimeEntry(userId, date, "Meal Break Start", breakStart.format(TIME_FMT), "-"));
+                    batch.add(new TimeEntry(userId, date, "Meal Break End", breakEnd.format(TIME_FMT), duration(breakMinutes)));
+                    batch.add(new TimeEntry(userId, date, "Clock Out", out.format(TIME_FMT), duration(worked)));
+                }
+                int inserted = lat.time(() -> DataManager.importTimeEntries(batch));
+                lat.countOps(inserted);
+            }
+            day = day.plusDays(1);
+            if (++days % 30 == 0) System.out.println("  history: " + day + " (" + lat.ops() + " entries, " + humanBytes(dbSize()) + ")");
+        }
+    }
+
+    // Many terminals punching at once. A hot set of users gets most of the traffic so the same user is
+    // punched concurrently; some punches are re-sent with the same idempotency key, as a retrying terminal would.
+    private void punchStorm(Latencies lat) throws InterruptedException {
+        Map<DataManager.PunchResult, LongAdder> outcomes = new EnumMap<>(DataManager.PunchResult.class);
+        for (DataManager.PunchResult r : DataManager.PunchResult.values()) outcomes.put(r, new LongAdder());
+        List<Integer> hot = userIds.subList(0, Math.min(HOT_USERS, userIds.size()));
+        Semaphore inFlight = new Semaphore(threads);
+
+        try (ExecutorService pool = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < punches; i++) {
+                inFlight.acquire();
+                pool.submit(() -> {
+                    try {
+                        ThreadLocalRandom r = ThreadLocalRandom.current();
+                        int userId = r.nextInt(100) < 60 ? hot.get(r.nextInt(hot.size())) : userIds.get(r.nextInt(userIds.size()));
+                        stormedUsers.add(userId);
+                        LocalDateTime now = LocalDateTime.now();
+                        String action = nextAction(PresenceIndex.getInstance().getState(userId), r);
+                        TimeEntry entry = new TimeEntry(userId, now.format(DATE_FMT), action, now.format(TIME_FMT), "-");
+                        String key = UUID.randomUUID().toString();
+
+                        outcomes.get(lat.time(() -> DataManager.recordPunch(entry, key))).increment();
+                        if (r.nextInt(10) == 0) {
+                            TimeEntry retry = new TimeEntry(userId, entry.getDate(), action, entry.getTime(), "-");
+                            outcomes.get(lat.time(() -> DataManager.recordPunch(retry, key))).increment();
+                        }
+                    } finally {
+                        inFlight.release();
+                    }
+                });
+            }
+        }
+        System.out.println("  punch outcomes: " + outcomes);
+        failedPunches = outcomes.get(DataManager.PunchResult.FAILED).sum();
+    }
+
+    private void reportQueries(Latencies lat) throws InterruptedException {
+        PayrollPeriod period = DataManager.getCurrentPayrollPeriod();
+        LocalDate start = period == null ? LocalDate.now().minusDays(13) : LocalDate.parse(period.getStartDate());
+        LocalDate end = period == null ? LocalDate.now() : LocalDate.parse(period.getEndDate());
+        Semaphore inFlight = new Semaphore(threads);
+
+        try (ExecutorService pool = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < queries; i++) {
+                inFlight.acquire();
+                pool.submit(() -> {
+                    try {
+                        ThreadLocalRandom r = ThreadLocalRandom.current();
+                        int kind = r.nextInt(10);
+                        if (kind < 7) lat.time(() -> DataManager.loadTimeEntries(userIds.get(r.nextInt(userIds.size())), start, end));
+                        else if (kind < 9) lat.time(() -> DataManager.loadEmployeesReportingTo(managerIds.get(r.nextInt(managerIds.size()))));
+                        else lat.time(() -> PresenceIndex.getInstance().onFloorCount());
+                    } finally {
+                        inFlight.release();
+                    }
+                });
+            }
+        }
+    }
+
+    // Cross-employee reports over the current period; these read every entry in the table.
+    private void fullReports(Latencies lat) {
+        LocalDate end = LocalDate.now();
+        LocalDate start = end.minusDays(13);
+        for (int i = 0; i < fullReports; i++) lat.time(() -> DataManager.loadAllEntries(start, end));
+    }
+
+    // The same cross-employee questions answered from the off-heap column cache.
+    private void columnarReports(Latencies lat) {
+        AnalyticsCache cache = AnalyticsCache.getInstance();
+        Map<Integer, Integer> managerOfUser = DataManager.loadManagerIdByUserId();
+        int maxUser = userIds.stream().mapToInt(Integer::intValue).max().orElse(0);
+        int maxManager = managerOfUser.values().stream().mapToInt(Integer::intValue).max().orElse(0);
+        int[] groupOfUser = new int[maxUser + 1];
+        Arrays.fill(groupOfUser, -1);
+        managerOfUser.forEach((u, m) -> { if (u <= maxUser) groupOfUser[u] = m; });
+
+        LocalDate end = LocalDate.now();
+        LocalDate start = end.minusDays(13);
+        LocalDate yearStart = end.minusYears(1);
+        for (int i = 0; i < queries; i++) {
+            switch (i % 4) {
+                case 0: lat.time(() -> cache.workedByUser(start, end)); break;
+                case 1: lat.time(() -> cache.workedByDay(yearStart, end)); break;
+                case 2: lat.time(() -> cache.workedByGroup(groupOfUser, maxManager + 1, start, end)); break;
+                default: lat.time(() -> cache.totalWorked(yearStart, end)); break;
+            }
+        }
+    }
+
+    // Replays every stormed user's entries in id order and counts transitions the punch rules should have rejected.
+    private void verifyPunchSequences() {
+        for (int userId : stormedUsers) {
+            List<TimeEntry> entries = new ArrayList<>(DataManager.loadTimeEntriesForUser(userId));
+            Collections.reverse(entries);
+            PresenceIndex.State state = PresenceIndex.State.CLOCKED_OUT;
+            for (TimeEntry e : entries) {
+                PresenceIndex.State next = apply(state, e.getAction());
+                if (next == null) {
+                    violations++;
+                    if (violations <= 10) System.err.println("  invalid " + e.getAction() + " for user " + userId + " in state " + state + " (entry " + e.getId() + ")");
+                    continue;
+                }
+                state = next;
+            }
+            if (state != PresenceIndex.getInstance().getState(userId)) {
+                violations++;
+                System.err.println("  presence index says " + PresenceIndex.getInstance().getState(userId) + " for user " + userId + " but entries say " + state);
+            }
+        }
+    }
+
+    // ==========================================
+    //                 HELPERS
+    // ==========================================
+
+    private interface Phase {
+        void run(Latencies lat) throws Exception;
+    }
+
+    // ops < 0 means "however many operations the phase timed".
+    private void phase(String name, int ops, Phase body) throws Exception {
+        System.out.println("== " + name);
+        Latencies lat = new Latencies();
+        long sizeBefore = dbSize();
+        long t0 = System.nanoTime();
+        body.run(lat);
+        double secs = (System.nanoTime() - t0) / 1e9;
+        long count = ops < 0 ? lat.ops() : Math.max(ops, lat.ops());
+        results.add(String.format("%-16s %10d %9.2f %10.1f %9.2f %9.2f %9.2f %9.2f %12s",
+                name, count, secs, secs > 0 ? count / secs : 0.0,
+                lat.percentile(50), lat.percentile(95), lat.percentile(99), lat.percentile(100),
+                humanBytes(dbSize() - sizeBefore)));
+    }
+
+    private static String nextAction(PresenceIndex.State state, Random r) {
+        switch (state) {
+            case CLOCKED_OUT: return "Clock In";
+            case ON_BREAK: return "Meal Break End";
+            default: return r.nextInt(3) == 0 ? "Meal Break Start" : "Clock Out";
+        }
+    }
+
+    private static PresenceIndex.State apply(PresenceIndex.State from, String action) {
+        if ("Clock In".equals(action)) return from == PresenceIndex.State.CLOCKED_OUT ? PresenceIndex.State.CLOCKED_IN : null;
+        if ("Clock Out".equals(action)) return from == PresenceIndex.State.CLOCKED_IN ? PresenceIndex.State.CLOCKED_OUT : null;
+        if ("Meal Break Start".equals(action)) return from == PresenceIndex.State.CLOCKED_IN ? PresenceIndex.State.ON_BREAK : null;
+        if ("Meal Break End".equals(action)) return from == PresenceIndex.State.ON_BREAK ? PresenceIndex.State.CLOCKED_IN : null;
+        return null;
+    }
+
+    private Integer pick(List<Integer> ids) {
+        return ids.isEmpty() ? null : ids.get(random.nextInt(ids.size()));
+    }
+
+    private static String duration(long minutes) {
+        return String.format("%dh %dm", minutes / 60, minutes % 60);
+    }
+
+    private long dbSize() {
+        long total = 0;
+        for (String suffix : new String[] { "", "-journal", "-wal", "-shm" }) {
+            try { total += Files.size(Paths.get(dbFile + suffix)); } catch (IOException e) {}
+        }
+        return total;
+    }
+
+    private static String humanBytes(long bytes) {
+        if (Math.abs(bytes) < 1024) return bytes + " B";
+        if (Math.abs(bytes) < 1024 * 1024) return String.format("%.1f KB", bytes / 1024.0);
+        if (Math.abs(bytes) < 1024L * 1024 * 1024) return String.format("%.1f MB", bytes / (1024.0 * 1024));
+        return String.format("%.2f GB", bytes / (1024.0 * 1024 * 1024));
+    }
+
+    // Collects per-operation latencies from many threads.
+    private static final class Latencies {
+        private long[] samples = new long[1024];
+        private int size = 0;
+        private long ops = 0;
+
+        void time(Runnable op) {
+            long t0 = System.nanoTime();
+            try { op.run(); } finally { add(System.nanoTime() - t0); }
+        }
+
+        <T> T time(Callable<T> op) {
+            long t0 = System.nanoTime();
+            try { return op.call(); } catch (Exception e) { throw new RuntimeException(e); } finally { add(System.nanoTime() - t0); }
+        }
+
+        synchronized void add(long nanos) {
+            if (size == samples.length) samples = Arrays.copyOf(samples, size * 2);
+            samples[size++] = nanos;
+        }
+
+        synchronized long count() { return size; }
+
+        // For timed operations that each cover many rows (e.g. a batch insert): ops/s then reports rows, not calls.
+        synchronized void countOps(long n) { ops += n; }
+
+        synchronized long ops() { return ops > 0 ? ops : size; }
+
+        synchronized double percentile(double p) {
+            if (size == 0) return 0;
+            long[] sorted = Arrays.copyOf(samples, size);
+            Arrays.sort(sorted);
+            int idx = (int) Math.ceil(p / 100.0 * size) - 1;
+            return sorted[Math.max(0, Math.min(size - 1, idx))] / 1e6;
+        }
+    }
+}
\ No newline at end of file